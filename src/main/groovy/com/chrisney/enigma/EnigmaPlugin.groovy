@@ -1,5 +1,6 @@
 package com.chrisney.enigma
 
+import com.chrisney.enigma.tasks.ApplyEncryptionTask
 import com.chrisney.enigma.tasks.BackupTask
 import com.chrisney.enigma.tasks.CleanBackupTask
 import com.chrisney.enigma.tasks.EnigmaTask
@@ -38,6 +39,12 @@ class EnigmaPlugin implements Plugin<Project> {
                 }
             }
 
+            // Out-of-place mode: the original JAVA files are never modified (no backup, no restore)
+            if (extension.outOfPlace) {
+                applyOutOfPlace(project, extension, customEncryptTask)
+                return
+            }
+
             project.task('cleanBackup', type: CleanBackupTask) {
                 enabled = extension.enabled
                 rootProject = project.rootDir.absolutePath
@@ -58,6 +65,8 @@ class EnigmaPlugin implements Plugin<Project> {
                 pathSrc = project.rootDir.absolutePath + extension.srcJava
                 hash = extension.hash
                 customFunction = extension.customFunction
+                stringCacheSize = extension.stringCacheSize
+                stringCacheWeak = extension.stringCacheWeak
                 debug = extension.debug
             }
 
@@ -71,7 +80,19 @@ class EnigmaPlugin implements Plugin<Project> {
                 customFunction = extension.customFunction
                 customEncryptionTask = customEncryptTask
                 injectFakeKeys = extension.injectFakeKeys
+                parallelism = extension.parallelism
+                compactLiterals = extension.compactLiterals
+                stringCacheSize = extension.stringCacheSize
+                stringCacheWeak = extension.stringCacheWeak
+                debug = extension.debug
+            }
+
+            project.task('applyEncryption', type: ApplyEncryptionTask) {
+                enabled = extension.enabled
+                rootProject = project.rootDir.absolutePath
+                pathSrc = project.rootDir.absolutePath + extension.srcJava
                 debug = extension.debug
+                dependsOn 'backup', 'encrypt'
             }
 
             project.task('restore', type: RestoreTask) {
@@ -85,7 +106,7 @@ class EnigmaPlugin implements Plugin<Project> {
 
             project.tasks.getByName('preBuild').dependsOn('backup')
             project.tasks.getByName('preBuild').dependsOn('injectCode')
-            project.tasks.getByName('preBuild').dependsOn('encrypt')
+            project.tasks.getByName('preBuild').dependsOn('applyEncryption')
 
             for (task in project.tasks) {
                 if (task.name.startsWith('assemble') && (task.name.endsWith('Release') || task.name.endsWith('Debug')))
@@ -95,4 +116,56 @@ class EnigmaPlugin implements Plugin<Project> {
             }
         }
     }
+
+    /**
+     * Out-of-place mode: encrypt the JAVA files into build/generated/enigma/<variant>,
+     * and compile this directory instead of the original JAVA files
+     * @param project Project
+     * @param extension Enigma options
+     * @param customEncryptTask Custom Encryption task (or null)
+     */
+    private static void applyOutOfPlace(Project project, EnigmaPluginExtension extension, customEncryptTask) {
+        def srcDir = project.file(project.rootDir.absolutePath + extension.srcJava)
+
+        def createEncryptTask = { String variantName ->
+            project.task("encrypt${variantName.capitalize()}", type: EnigmaTask) {
+                enabled = extension.enabled
+                rootProject = project.rootDir.absolutePath
+                pathSrc = srcDir.absolutePath
+                hash = extension.hash
+                ignoredClasses = extension.ignoredClasses
+                classes = extension.classes
+                customFunction = extension.customFunction
+                customEncryptionTask = customEncryptTask
+                injectFakeKeys = extension.injectFakeKeys
+                parallelism = extension.parallelism
+                compactLiterals = extension.compactLiterals
+                stringCacheSize = extension.stringCacheSize
+                stringCacheWeak = extension.stringCacheWeak
+                debug = extension.debug
+                outputDir = project.layout.buildDirectory.dir("generated/enigma/${variantName}").get().asFile
+            }
+        }
+
+        // Compile the encrypted files instead of the original ones:
+        def useEncryptedSources = { javaCompile, encryptTask ->
+            javaCompile.dependsOn(encryptTask)
+            def sources = javaCompile.source
+            javaCompile.source = project.files(encryptTask.outputDir, sources.filter {
+                !it.absolutePath.startsWith(srcDir.absolutePath + File.separator)
+            })
+        }
+
+        def android = project.extensions.findByName('android')
+        if (android != null) {
+            def variants = android.hasProperty('applicationVariants') ? android.applicationVariants : android.libraryVariants
+            variants.all { variant ->
+                def encryptTask = createEncryptTask(variant.name)
+                variant.javaCompileProvider.configure { useEncryptedSources(it, encryptTask) }
+            }
+        } else {
+            def compileJava = project.tasks.findByName('compileJava')
+            if (compileJava != null) useEncryptedSources(compileJava, createEncryptTask('main'))
+        }
+    }
 }
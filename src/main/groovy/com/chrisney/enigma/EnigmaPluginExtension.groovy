@@ -30,6 +30,28 @@ class EnigmaPluginExtension {
      * Enable / disable the fake keys injection (honeypot principal)
      */
     boolean injectFakeKeys = true;
+    /**
+     * Number of files encrypted in parallel (0: number of available processors)
+     */
+    int parallelism = 0
+    /**
+     * Out-of-place mode: encrypt the JAVA files into build/generated/enigma/<variant> and compile them from there
+     * (the original JAVA files are never modified: no backup, no restore)
+     */
+    boolean outOfPlace = false
+    /**
+     * Compact mode: the encrypted values are written as Latin-1 packed string literals (one constant)
+     * instead of byte arrays (smaller methods and DEX)
+     */
+    boolean compactLiterals = false
+    /**
+     * Number of decrypted string values kept in memory by the Enigma code, in plain text (0: no cache)
+     */
+    int stringCacheSize = 0
+    /**
+     * Decrypted string values of the cache only weakly referenced (released by the garbage collector)
+     */
+    boolean stringCacheWeak = false
     /**
      * Enable / disable the DEBUG (verbose) mode
      */
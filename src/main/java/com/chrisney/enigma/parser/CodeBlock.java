@@ -1,10 +1,12 @@
 package com.chrisney.enigma.parser;
 
 import com.chrisney.enigma.utils.SmartArrayList;
-import com.chrisney.enigma.utils.TextUtils;
 import com.chrisney.enigma.utils.Utils;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Represent a block of JAVA code
@@ -33,9 +35,20 @@ public class CodeBlock {
     public int innerOffset = 0;
 
     /**
-     * Source code
+     * Source code of the file (shared by all the blocks of the file)
      */
-    public String code;
+    private String source;
+
+    /**
+     * Absolute start (included) and end (excluded) positions of the block into the source code of the file
+     */
+    private int sourceStart = 0;
+    private int sourceEnd = 0;
+
+    /**
+     * Source code of the block, only if modified (otherwise the code is read from the source code of the file)
+     */
+    private String code;
 
     /**
      * Black name for Class or function or Annotation
@@ -65,7 +78,7 @@ public class CodeBlock {
     /**
      * Source code of the block split in words (useful for processing)
      */
-    public ArrayList<CodeString> words = new ArrayList<>();
+    public List<CodeString> words = new ArrayList<>();
 
     /**
      * Indicate if the code block is nested or not.
@@ -136,13 +149,78 @@ public class CodeBlock {
         return end + offset;
     }
 
+    /**
+     * Define the source code of the block as a range of the source code of the file (no copy)
+     * @param source Source code of the file
+     * @param start Absolute start position (included)
+     * @param end Absolute end position (excluded)
+     */
+    void setSource(String source, int start, int end) {
+        this.source = source;
+        this.sourceStart = start;
+        this.sourceEnd = end;
+        this.code = null;
+    }
+
+    /**
+     * Return the source code of the block (created at each call if the block is not modified)
+     * @return Source code of the block
+     */
+    public String getCode() {
+        if (code != null || source == null) return code;
+        return source.substring(sourceStart, sourceEnd);
+    }
+
+    /**
+     * Replace the source code of the block
+     * @param code New source code of the block
+     */
+    public void setCode(String code) {
+        this.code = code;
+    }
+
+    /**
+     * Modify the source code of the block in a single pass
+     * @param edits Modifications (positions relative to the source code of the block, sorted, without overlap)
+     */
+    void applyEdits(CodeEdits edits) {
+        if (edits.isEmpty()) return;
+        if (code != null || source == null) this.code = edits.apply(code, 0, code.length());
+        else this.code = edits.apply(source, sourceStart, sourceEnd);
+    }
+
+    /**
+     * Return the length of the source code of the block
+     * @return Number of characters
+     */
+    public int getCodeLength() {
+        if (code != null || source == null) return (code != null) ? code.length() : 0;
+        return sourceEnd - sourceStart;
+    }
+
+    /**
+     * Append a part of the source code of the block, like TextUtils.safeSubstring (nothing if indexes are invalid)
+     * @param out Output
+     * @param from Start index (included), from the start of the block
+     * @param to End index (excluded), from the start of the block
+     * @throws IOException Output error
+     */
+    private void appendCode(Appendable out, int from, int to) throws IOException {
+        int l = getCodeLength();
+        if (l <= 0) return;
+        if (from > -1 && to > -1 && to <= l && from < to) {
+            if (code != null) out.append(code, from, to);
+            else out.append(source, sourceStart + from, sourceStart + to);
+        }
+    }
+
     /**
      * Convert all words to a String value (source code)
      * @return Source code generate from words contains by the block
      */
     public String wordsToString() {
         StringBuilder sb = new StringBuilder();
-        for (CodeString s : words) sb.append(s.value);
+        for (CodeString s : words) sb.append(s.getValue());
         return sb.toString();
     }
 
@@ -152,7 +230,7 @@ public class CodeBlock {
      */
     public void updatePosition(CodeBlock previousBlock) {
         this.start = previousBlock.end;
-        this.end = this.start + this.code.length();
+        this.end = this.start + this.getCodeLength();
         this.offset = previousBlock.offset;
         this.innerOffset = previousBlock.innerOffset;
     }
@@ -244,28 +322,32 @@ public class CodeBlock {
      * @return Source code of the block
      */
     public String toCode() {
-        return toCode(0);
+        StringBuilder sb = new StringBuilder(getCodeLength());
+        try {
+            toCode(sb);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return sb.toString();
     }
 
     /**
-     * Generate the source code of the block
-     * @param level Level of the block
-     * @return Source code of the block
+     * Write the source code of the block (without intermediate copy of the sub blocks)
+     * @param out Output
+     * @throws IOException Output error
      */
-    private String toCode(int level) {
-
-        StringBuilder sb = new StringBuilder();
+    public void toCode(Appendable out) throws IOException {
 
         if (!hasChildren()) {
-            sb.append(code);
+            if (code != null || source == null) out.append(code);
+            else out.append(source, sourceStart, sourceEnd);
         } else {
 
             // Add signature code:
             CodeBlock firstBLock = getFirstNoneInjectedBlock();
             if (firstBLock != null) {
                 int prefixEnd = firstBLock.innerOffset + firstBLock.start;
-                String prefix = TextUtils.safeSubstring(code, 0, prefixEnd);
-                if (prefix != null) sb.append(prefix);
+                appendCode(out, 0, prefixEnd);
             }
 
             // For each sub block:
@@ -275,14 +357,13 @@ public class CodeBlock {
                 CodeBlock nextSubBlock = subBlocks.next(i);
 
                 // Add sub code:
-                sb.append(subBlock.toCode(level + 1));
+                subBlock.toCode(out);
 
                 // Add code between current sub block and next one:
                 if (!subBlock.injected && i < subBlocks.lastIndex()) {
                     int suffixStart = subBlock.innerOffset + subBlock.end;
-                    int suffixEnd = (nextSubBlock != null) ? nextSubBlock.innerOffset + nextSubBlock.start : code.length();
-                    String suffix = TextUtils.safeSubstring(code, suffixStart, suffixEnd);
-                    if (suffix != null) sb.append(suffix);
+                    int suffixEnd = (nextSubBlock != null) ? nextSubBlock.innerOffset + nextSubBlock.start : getCodeLength();
+                    appendCode(out, suffixStart, suffixEnd);
                 }
             }
 
@@ -290,13 +371,10 @@ public class CodeBlock {
             CodeBlock latestBlock = getLastNoneInjectedBlock();
             if (latestBlock != null) {
                 int suffixStart = latestBlock.innerOffset + latestBlock.end;
-                int suffixEnd = code.length();
-                String suffix = TextUtils.safeSubstring(code, suffixStart, suffixEnd);
-                if (suffix != null) sb.append(suffix);
+                int suffixEnd = getCodeLength();
+                appendCode(out, suffixStart, suffixEnd);
             }
 
         }
-
-        return sb.toString();
     }
 }
@@ -0,0 +1,120 @@
+package com.chrisney.enigma.parser;
+
+import com.chrisney.enigma.utils.Utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Interval index of the code blocks without children (leaves of the code blocks tree): return the block which
+ * contains a range of characters in logarithmic time.
+ * The leaves sorted by position without overlap (all the parsed blocks) are searched by dichotomy, the others
+ * (injected blocks) are searched linearly. The result is the same as a depth-first search of the tree.
+ * @author Christopher Ney
+ */
+class CodeBlockIndex {
+
+    /**
+     * Leaves sorted by position, without overlap
+     */
+    private final CodeBlock[] blocks;
+
+    /**
+     * Start position of the sorted leaves
+     */
+    private final int[] starts;
+
+    /**
+     * Depth-first order of the sorted leaves
+     */
+    private final int[] orders;
+
+    /**
+     * Other leaves (out of order or overlapping), in depth-first order
+     */
+    private final CodeBlock[] others;
+
+    /**
+     * Depth-first order of the other leaves
+     */
+    private final int[] otherOrders;
+
+    /**
+     * Build the index
+     * @param rootBlocks Root blocks of the code blocks tree
+     */
+    CodeBlockIndex(ArrayList<CodeBlock> rootBlocks) {
+        ArrayList<CodeBlock> leaves = new ArrayList<>();
+        addLeaves(rootBlocks, leaves);
+
+        int size = 0, otherSize = 0;
+        CodeBlock[] sorted = new CodeBlock[leaves.size()];
+        int[] sortedOrders = new int[leaves.size()];
+        CodeBlock[] unsorted = new CodeBlock[leaves.size()];
+        int[] unsortedOrders = new int[leaves.size()];
+
+        int lastEnd = Integer.MIN_VALUE;
+        for (int i = 0; i < leaves.size(); i++) {
+            CodeBlock block = leaves.get(i);
+            if (block.getStart() >= lastEnd && block.getStart() <= block.getEnd()) {
+                sorted[size] = block;
+                sortedOrders[size++] = i;
+                lastEnd = block.getEnd();
+            } else {
+                unsorted[otherSize] = block;
+                unsortedOrders[otherSize++] = i;
+            }
+        }
+
+        this.blocks = Arrays.copyOf(sorted, size);
+        this.orders = Arrays.copyOf(sortedOrders, size);
+        this.starts = new int[size];
+        for (int i = 0; i < size; i++) starts[i] = blocks[i].getStart();
+        this.others = Arrays.copyOf(unsorted, otherSize);
+        this.otherOrders = Arrays.copyOf(unsortedOrders, otherSize);
+    }
+
+    /**
+     * Add the leaves of the blocks, in depth-first order
+     * @param blocks Blocks
+     * @param leaves Output list
+     */
+    private static void addLeaves(ArrayList<CodeBlock> blocks, ArrayList<CodeBlock> leaves) {
+        for (CodeBlock block : blocks) {
+            if (Utils.arrayNotEmpty(block.subBlocks)) {
+                addLeaves(block.subBlocks, leaves);
+            } else {
+                leaves.add(block);
+            }
+        }
+    }
+
+    /**
+     * Return the first block without children (depth-first order) which contains a range of characters
+     * @param start Start index character
+     * @param end End index character
+     * @return Block if found, otherwise null
+     */
+    CodeBlock getBlockBetween(int start, int end) {
+        CodeBlock result = null;
+        int order = Integer.MAX_VALUE;
+
+        // Last sorted leaf starting before the range (the only one which can contain it):
+        int i = Arrays.binarySearch(starts, start);
+        if (i < 0) {
+            i = -i - 2;
+        } else {
+            while (i + 1 < starts.length && starts[i + 1] == start) i++;
+        }
+        if (i >= 0 && end <= blocks[i].getEnd()) {
+            result = blocks[i];
+            order = orders[i];
+        }
+
+        for (int j = 0; j < others.length && otherOrders[j] < order; j++) {
+            CodeBlock block = others[j];
+            if (block.getStart() <= start && end <= block.getEnd()) return block;
+        }
+        return result;
+    }
+}
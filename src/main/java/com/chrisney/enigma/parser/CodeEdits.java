@@ -0,0 +1,110 @@
+package com.chrisney.enigma.parser;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+
+/**
+ * List of modifications of a source code (replacement of a range of characters by a text), applied all together
+ * in a single pass: the source code is copied only once, whatever the number of modifications.
+ * @author Christopher Ney
+ */
+class CodeEdits {
+
+    /**
+     * Modifications, by position (see sort)
+     */
+    private final ArrayList<Edit> edits = new ArrayList<>();
+
+    /**
+     * Add a modification
+     * @param start Start position of the replaced characters (included)
+     * @param end End position of the replaced characters (excluded), equal to start for an insertion
+     * @param text New text
+     */
+    void add(int start, int end, String text) {
+        edits.add(new Edit(start, end, text));
+    }
+
+    /**
+     * Indicate if there is no modification
+     * @return True if empty
+     */
+    boolean isEmpty() {
+        return edits.isEmpty();
+    }
+
+    /**
+     * Remove all modifications
+     */
+    void clear() {
+        edits.clear();
+    }
+
+    /**
+     * Sort the modifications by position (insertions first, when at the same position than a replacement)
+     */
+    void sort() {
+        edits.sort(Comparator.comparingInt((Edit e) -> e.start).thenComparingInt(e -> e.end));
+    }
+
+    /**
+     * Return the length difference of the source code due to the modifications
+     * @return Number of characters added (or removed if negative)
+     */
+    int getLengthDifference() {
+        int diff = 0;
+        for (Edit edit : edits) diff += edit.text.length() - (edit.end - edit.start);
+        return diff;
+    }
+
+    /**
+     * Append a range of a source code with the modifications (sorted, without overlap)
+     * @param out Output
+     * @param code Source code
+     * @param from Start of the range (position 0 of the modifications)
+     * @param to End of the range
+     * @throws IOException Output error
+     */
+    void appendTo(Appendable out, CharSequence code, int from, int to) throws IOException {
+        int position = from;
+        for (Edit edit : edits) {
+            out.append(code, position, from + edit.start).append(edit.text);
+            position = from + edit.end;
+        }
+        out.append(code, position, to);
+    }
+
+    /**
+     * Apply the modifications (sorted, without overlap) to a range of a source code
+     * @param code Source code
+     * @param from Start of the range (position 0 of the modifications)
+     * @param to End of the range
+     * @return Modified source code
+     */
+    String apply(CharSequence code, int from, int to) {
+        StringBuilder sb = new StringBuilder(to - from + getLengthDifference());
+        try {
+            appendTo(sb, code, from, to);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Modification: replace a range of characters by a text
+     */
+    private static class Edit {
+        final int start;
+        final int end;
+        final String text;
+
+        Edit(int start, int end, String text) {
+            this.start = start;
+            this.end = end;
+            this.text = text;
+        }
+    }
+}
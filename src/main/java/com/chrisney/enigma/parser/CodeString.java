@@ -1,14 +1,21 @@
 package com.chrisney.enigma.parser;
 
+import com.chrisney.enigma.utils.TextUtils;
+
 /**
- * Represent a keyword a JAVA code
+ * Represent a keyword a JAVA code: positions into the source code, the value is only created on demand
  */
 public class CodeString {
 
     /**
-     * Word value
+     * Source code containing the word
+     */
+    private final String source;
+
+    /**
+     * Word value (lazy)
      */
-    public String value;
+    private String value;
 
     /**
      * Word start position
@@ -20,6 +27,11 @@ public class CodeString {
      */
     public int end;
 
+    /**
+     * JAVA keyword or native Type of the word (constant of the parser), or null
+     */
+    public String keyword = null;
+
     /**
      * Indicate if word is a JAVA keyword (instruction)
      */
@@ -37,14 +49,75 @@ public class CodeString {
 
     /**
      * Constructor
+     * @param source Source code containing the word
      * @param start Word start position
+     * @param end Word end position
      */
-    public CodeString(int start) {
+    public CodeString(String source, int start, int end) {
+        this.source = source;
         this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Return the word value (created at first call)
+     * @return Word value
+     */
+    public String getValue() {
+        if (value == null) {
+            value = (end - start == 1) ? TextUtils.valueOf(source.charAt(start)) : source.substring(start, end);
+        }
+        return value;
+    }
+
+    /**
+     * Return the length of the word
+     * @return Number of characters
+     */
+    public int length() {
+        return end - start;
+    }
+
+    /**
+     * Return a character of the word
+     * @param index Index of the character (from the start of the word)
+     * @return Character
+     */
+    public char charAt(int index) {
+        return source.charAt(start + index);
+    }
+
+    /**
+     * Indicate if the word is equal to a value (without creating the word value)
+     * @param word Value to compare
+     * @return True if equal
+     */
+    public boolean is(String word) {
+        return word.length() == length() && source.startsWith(word, start);
+    }
+
+    /**
+     * Indicate if the word starts with a prefix (without creating the word value)
+     * @param prefix Prefix to test
+     * @return True if the word starts with the prefix
+     */
+    public boolean startsWith(String prefix) {
+        return prefix.length() <= length() && source.startsWith(prefix, start);
+    }
+
+    /**
+     * Indicate if the word contains only space characters (like String.trim())
+     * @return True if the word is blank
+     */
+    public boolean isBlank() {
+        for (int i = start; i < end; i++) {
+            if (source.charAt(i) > ' ') return false;
+        }
+        return true;
     }
 
     @Override
     public String toString() {
-        return "[" + start + ", " + end + "] '" + value + "'";
+        return "[" + start + ", " + end + "] '" + getValue() + "'";
     }
 }
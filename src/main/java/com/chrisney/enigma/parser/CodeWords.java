@@ -0,0 +1,47 @@
+package com.chrisney.enigma.parser;
+
+import java.util.AbstractList;
+
+/**
+ * Words of a code block: view of a range of tokens of the lexer (words are created on demand)
+ * @author Christopher Ney
+ */
+class CodeWords extends AbstractList<CodeString> {
+
+    /**
+     * Lexer owning the tokens
+     */
+    private final JavaLexer lexer;
+
+    /**
+     * Index of the first token (included)
+     */
+    private final int first;
+
+    /**
+     * Index of the last token (excluded)
+     */
+    int last;
+
+    /**
+     * Constructor
+     * @param lexer Lexer owning the tokens
+     * @param first Index of the first token (included)
+     */
+    CodeWords(JavaLexer lexer, int first) {
+        this.lexer = lexer;
+        this.first = first;
+        this.last = first;
+    }
+
+    @Override
+    public CodeString get(int index) {
+        if (index < 0 || index >= size()) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        return lexer.token(first + index);
+    }
+
+    @Override
+    public int size() {
+        return last - first;
+    }
+}
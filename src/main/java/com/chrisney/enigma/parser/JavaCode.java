@@ -1,12 +1,16 @@
 package com.chrisney.enigma.parser;
 
 import com.chrisney.enigma.utils.AESUtils;
+import com.chrisney.enigma.utils.CipherCache;
 import com.chrisney.enigma.utils.TextUtils;
 import com.chrisney.enigma.utils.Utils;
-import org.gradle.api.DefaultTask;
 
-import java.lang.reflect.Method;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Map a Java file
@@ -33,6 +37,22 @@ public class JavaCode {
      */
     private String sourceCode;
 
+    /**
+     * Interval index of the blocks (null if the blocks have been modified)
+     */
+    private CodeBlockIndex blockIndex;
+
+    /**
+     * Encrypted values written as Latin-1 packed string literals instead of byte arrays (see getEnigmaCode)
+     */
+    public boolean compactLiterals = false;
+
+    /**
+     * Slot of each encrypted value added to the decryption calls, for the cache of the decrypted values
+     * (see InjectCodeTask.stringCacheSize)
+     */
+    public boolean cacheSlots = false;
+
     /**
      * Constructor
      * @param blocks Blocks of codes
@@ -43,6 +63,7 @@ public class JavaCode {
         this.rootCodeBlocks = blocks;
         this.codeStrings = strings;
         this.sourceCode = sourceCode;
+        this.blockIndex = new CodeBlockIndex(blocks);
     }
 
     /**
@@ -80,22 +101,14 @@ public class JavaCode {
     }
 
     /**
-     * Return of block of code from a start & end characters indexes.
-     * @param blocks Blocks to search
+     * Return of block of code (without children) from a start & end characters indexes.
      * @param start Start index character
      * @param end End index character
      * @return Block if found, otherwise null
      */
-    private CodeBlock getBlockBetween(ArrayList<CodeBlock> blocks, int start, int end) {
-        for (CodeBlock block : blocks) {
-            if (Utils.arrayNotEmpty(block.subBlocks)) {
-                CodeBlock b = getBlockBetween(block.subBlocks, start, end);
-                if (b != null) return b;
-            } else if (block.getStart() <= start && end <= block.getEnd()) {
-                return block;
-            }
-        }
-        return null;
+    public CodeBlock getBlockBetween(int start, int end) {
+        if (blockIndex == null) blockIndex = new CodeBlockIndex(this.rootCodeBlocks);
+        return blockIndex.getBlockBetween(start, end);
     }
 
     /**
@@ -269,12 +282,13 @@ public class JavaCode {
      */
     private void addBlockAtFirst(ArrayList<CodeBlock> blocks, CodeBlock newBlock) {
         newBlock.injected = true;
+        blockIndex = null;
 
         if (blocks.size() > 0) {
             if (UPDATE_OFFSETS) {
                 CodeBlock firstBlock = blocks.get(0);
                 newBlock.start = 0;
-                newBlock.end = newBlock.code.length();
+                newBlock.end = newBlock.getCodeLength();
                 newBlock.offset = firstBlock.offset;
                 newBlock.innerOffset = firstBlock.innerOffset;
             }
@@ -285,14 +299,14 @@ public class JavaCode {
                 for (int i = 1; i < blocks.size(); i++) {
                     // Shift block offsets:
                     CodeBlock block = blocks.get(i);
-                    block.start = block.start + newBlock.code.length();
-                    block.end = block.end + newBlock.code.length();
+                    block.start = block.start + newBlock.getCodeLength();
+                    block.end = block.end + newBlock.getCodeLength();
                 }
             }
         } else {
             if (UPDATE_OFFSETS) {
                 newBlock.start = 0;
-                newBlock.end = newBlock.code.length();
+                newBlock.end = newBlock.getCodeLength();
             }
             Utils.insertInArray(blocks, 0, newBlock);
         }
@@ -305,12 +319,13 @@ public class JavaCode {
      */
     private void addBlockAtTheEnd(ArrayList<CodeBlock> blocks, CodeBlock newBlock) {
         newBlock.injected = true;
+        blockIndex = null;
         if (UPDATE_OFFSETS) {
             if (blocks.size() > 0) {
                 CodeBlock lastBlock = blocks.get(blocks.size() - 1);
                 newBlock.updatePosition(lastBlock);
             } else {
-                newBlock.end = newBlock.code.length();
+                newBlock.end = newBlock.getCodeLength();
             }
         }
         blocks.add(newBlock);
@@ -326,6 +341,7 @@ public class JavaCode {
     private boolean addBlockAtPosition(ArrayList<CodeBlock> blocks, CodeBlock newBlock, InsertPosition position, CodeBlock.BlockType type) {
         boolean inserted = false;
         newBlock.injected = true;
+        blockIndex = null;
 
         if (position == InsertPosition.AtTheEnd) {
             for (int i = blocks.size() - 1; i > 0; i--) {
@@ -341,8 +357,8 @@ public class JavaCode {
                     inserted = true;
                 } else if (inserted) {
                     // Shift block offsets:
-                    block.start = block.start + newBlock.code.length();
-                    block.end = block.end + newBlock.code.length();
+                    block.start = block.start + newBlock.getCodeLength();
+                    block.end = block.end + newBlock.getCodeLength();
                 }
             }
         } else {
@@ -366,8 +382,8 @@ public class JavaCode {
                     }
                 } else if (inserted) {
                     // Shift block offsets:
-                    block.start = block.start + newBlock.code.length();
-                    block.end = block.end + newBlock.code.length();
+                    block.start = block.start + newBlock.getCodeLength();
+                    block.end = block.end + newBlock.getCodeLength();
                 }
             }
         }
@@ -430,9 +446,8 @@ public class JavaCode {
      * @return Fake Java code
      */
     private CodeBlock getFakeCode(String paramName) {
-        String code = "\n        if (" + paramName + ".isEmpty()) " + paramName + ".getClass().toString();";
         JavaParser javaParser = new JavaParser();
-        JavaCode javaCode = javaParser.parse(code);
+        JavaCode javaCode = javaParser.parse(getFakeCodeSource(paramName));
         CodeBlock block = javaCode.getAllBlocks().get(0);
         block.hasParent = true;
         return block;
@@ -443,10 +458,19 @@ public class JavaCode {
      * @param paramName Name of this fake attribute
      * @return Fake Java attribute
      */
-    private String getFakeAttribute(String paramName, String randomValue) {
+    static String getFakeAttribute(String paramName, String randomValue) {
         return "public static final String " + paramName + " = \"" + randomValue + "\";";
     }
 
+    /**
+     * Generate the source code of the fake Java code which is calling the fake attribute
+     * @param paramName Name of this fake attribute
+     * @return Source code of the fake Java code
+     */
+    static String getFakeCodeSource(String paramName) {
+        return "\n        if (" + paramName + ".isEmpty()) " + paramName + ".getClass().toString();";
+    }
+
     /**
      * Encrypt all string values
      * @param key Secrete key for encryption
@@ -454,101 +478,116 @@ public class JavaCode {
      * @throws Exception Encryption error
      */
     public void encryptStrings(String key, String functionName) throws Exception {
+        encryptStrings(key, functionName, null);
+    }
 
-        int stringOffset = 0;
-        CodeBlock block = null;
+    /**
+     * Encrypt all string values
+     * @param key Secrete key for encryption
+     * @param functionName Name of the decryption method
+     * @param cache Cache of the encrypted values (or null)
+     * @throws Exception Encryption error
+     */
+    public void encryptStrings(String key, String functionName, CipherCache cache) throws Exception {
 
-        // For each String value:
+        // String values to encrypt (except switch/case values, not authorized by Java compiler):
+        ArrayList<CodeString> stringValues = new ArrayList<>();
+        ArrayList<String> values = new ArrayList<>();
         for (CodeString cs : getStringValues()) {
-
-            // Escape switch/case value (not authorized by Java compiler):
             if (cs.isCaseValue) continue;
+            stringValues.add(cs);
+            values.add(unescapeString(cs.getValue().substring(1, cs.getValue().length() - 1)));
+        }
+
+        // All the string values encrypted together:
+        List<byte[]> encryptedValues = encryptValues(values, key, cache);
+
+        CodeEdits edits = new CodeEdits();
+        CodeBlock block = null;
+
+        // For each String value:
+        for (int i = 0; i < stringValues.size(); i++) {
+            CodeString cs = stringValues.get(i);
 
             // Search the code block which contains the string value:
             if (block == null || !(block.getStart() <= cs.start && cs.end <= block.getEnd())) {
-                block = getBlockBetween(this.rootCodeBlocks, cs.start, cs.end);
-                stringOffset = 0;
+                // Apply the modifications of the previous block:
+                if (block != null) block.applyEdits(edits);
+                edits.clear();
+                block = getBlockBetween(cs.start, cs.end);
             }
 
             // If code block found:
             if (block != null) {
                 int bStart = cs.start - (block.start + block.offset);
                 int bEnd = cs.end - (block.start + block.offset);
-                // System.out.println(cs.value + " == " + block.code.substring(bStart, bEnd));
-
-                // Get the string value en encrypt it:
-                String value = cs.value.substring(1, cs.value.length() - 1);
-                String encrypted = encryptString(value, key, functionName, null);
-
-                // Inject the Enigma signature function:
-                StringBuilder builder = new StringBuilder();
-                builder.append(block.code, 0, bStart + stringOffset);
-                builder.append(encrypted);
-                builder.append(block.code, bEnd  + stringOffset, block.code.length());
-
-                // Compute the length difference due to the code modification:
-                int originalLength = cs.value.length();
-                int encryptedLength = encrypted.length();
-                int lengthDiff = (encryptedLength - originalLength);
-
-                // System.out.println(builder.toString());
-                block.code = builder.toString();
-                // block.end += lengthDiff;
 
-                stringOffset += lengthDiff;
+                // Inject the Enigma signature function (applied with all the modifications of the block):
+                edits.add(bStart, bEnd, getEnigmaCode(encryptedValues.get(i), functionName, compactLiterals, cacheSlots));
             }
         }
+        if (block != null) block.applyEdits(edits);
     }
 
     /**
-     * Encrypt a string value, to Enigma ciphering style
-     * @param value String value to encrypt
+     * Encrypt string values all together (e.g. all the string values of a JAVA file)
+     * @param values String values (unescaped)
      * @param key Secrete key encryption
-     * @param functionName Name of the decryption method
-     * @param encryptTask Optional external decryption Task name (not yet implemented)
-     * @return String value encrypted with Enigma ciphering style
+     * @param cache Cache of the encrypted values (or null)
+     * @return Encrypted bytes (same order)
      * @throws Exception Encryption error
      */
-    private String encryptString(String value, String key, String functionName, DefaultTask encryptTask) throws Exception {
-        StringBuilder builder = new StringBuilder();
-        value = value.replace("\\\"", "\"");
-        value = value.replace("\\\\", "\\");
+    static List<byte[]> encryptValues(List<String> values, String key, CipherCache cache) throws Exception {
+        if (values.isEmpty()) return Collections.emptyList();
+        if (key == null) throw new Exception("Hash Key undefined!");
+        if (cache != null) return cache.encryptAll(values);
 
-        String encrypted = encryptString(key, value, encryptTask);
+        List<byte[]> clear = new ArrayList<>(values.size());
+        for (String value : values) clear.add(AESUtils.toBytes(value));
+        return AESUtils.encryptor(key).encryptAll(clear);
+    }
 
-        if (encryptTask == null) {
-            byte[] enc = AESUtils.toByte(encrypted);
-            builder.append(functionName);
-            builder.append("(new byte[]");
-            builder.append(bytesToCode(enc));
-            builder.append(")");
-        } else {
-            builder.append(functionName);
-            builder.append("(\"");
-            builder.append(encrypted);
-            builder.append("\")");
-        }
+    /**
+     * Unescape a string value of the source code (quotes and backslashes)
+     * @param value String value
+     * @return Unescaped value
+     */
+    static String unescapeString(String value) {
+        return value.replace("\\\"", "\"").replace("\\\\", "\\");
+    }
 
-        return builder.toString();
+    /**
+     * Return the Enigma decryption call of an encrypted value
+     * @param encrypted Encrypted bytes
+     * @param functionName Name of the decryption method
+     * @param compact True for a Latin-1 packed string literal (single constant), false for a byte array
+     * @param slot True to add the slot of the value (see getSlot)
+     * @return JAVA code
+     */
+    static String getEnigmaCode(byte[] encrypted, String functionName, boolean compact, boolean slot) {
+        String args = (compact && encrypted.length <= MAX_COMPACT_LENGTH)
+                ? bytesToLatin1Code(encrypted) : "new byte[]" + bytesToCode(encrypted);
+        if (slot) args += ", " + getSlot(encrypted);
+        return functionName + "(" + args + ")";
     }
 
     /**
-     * Encrypt string value
-     * @param key Secrete key
-     * @param value String value
-     * @param encryptTask Experimental !
-     * @return Encrypted string
-     * @throws Exception Missing encryption secrete key
-     */
-    private String encryptString(String key, String value, DefaultTask encryptTask) throws Exception {
-        // System.out.println(value);
-        if (encryptTask == null) {
-            if (key == null) throw new Exception("Hash Key undefined!");
-            return AESUtils.encrypt(key, value);
-        } else {
-            Method encryptMethod = encryptTask.getClass().getMethod("encrypt", String.class);
-            return (String) encryptMethod.invoke(encryptTask, value);
-        }
+     * Return the slot of an encrypted value into the cache of the decrypted values: same value, same slot
+     * (whatever the file and the build)
+     * @param encrypted Encrypted bytes
+     * @return Slot (positive)
+     */
+    static int getSlot(byte[] encrypted) {
+        return Arrays.hashCode(encrypted) & 0x7FFFFFFF;
+    }
+
+    /**
+     * JAVA code of the byte values (index: value + 128)
+     */
+    private static final String[] BYTE_CODES = new String[256];
+
+    static {
+        for (int i = 0; i < BYTE_CODES.length; i++) BYTE_CODES[i] = Byte.toString((byte) (i - 128));
     }
 
     /**
@@ -556,15 +595,50 @@ public class JavaCode {
      * @param bytes Bytes value
      * @return JAVA code
      */
-    private String bytesToCode(byte[] bytes) {
-        StringBuilder builder = new StringBuilder();
-        builder.append("{");
+    private static String bytesToCode(byte[] bytes) {
+        // At most 6 characters by value ("-128, "):
+        StringBuilder builder = new StringBuilder(2 + 6 * bytes.length);
+        builder.append('{');
         for (int i = 0; i < bytes.length; i++) {
-            byte b = bytes[i];
-            builder.append(b);
-            if (i < bytes.length - 1) builder.append(", ");
+            if (i > 0) builder.append(", ");
+            builder.append(BYTE_CODES[bytes[i] + 128]);
         }
-        builder.append("}");
+        builder.append('}');
+        return builder.toString();
+    }
+
+    /**
+     * Maximum size of a Latin-1 packed value: the constant pool limit is 65535 bytes, and a char above 127 (or 0)
+     * takes 2 bytes (modified UTF-8)
+     */
+    static final int MAX_COMPACT_LENGTH = 0xFFFF / 2;
+
+    /**
+     * JAVA code of the byte values into a string literal (index: value + 128): printable ASCII characters as is,
+     * other characters as 3 digits octal escapes (not extended by the next character)
+     */
+    private static final String[] LATIN1_CODES = new String[256];
+
+    static {
+        for (int i = 0; i < LATIN1_CODES.length; i++) {
+            int c = i ^ 0x80;
+            if (c == '"' || c == '\\') LATIN1_CODES[i] = "\\" + (char) c;
+            else if (c >= 0x20 && c < 0x7F) LATIN1_CODES[i] = String.valueOf((char) c);
+            else LATIN1_CODES[i] = String.format("\\%03o", c);
+        }
+    }
+
+    /**
+     * Convert bytes value, to a JAVA string literal (one char by byte, from 0 to 255)
+     * @param bytes Bytes value
+     * @return JAVA code
+     */
+    private static String bytesToLatin1Code(byte[] bytes) {
+        // At most 4 characters by value ("\377"):
+        StringBuilder builder = new StringBuilder(2 + 4 * bytes.length);
+        builder.append('"');
+        for (byte b : bytes) builder.append(LATIN1_CODES[b + 128]);
+        builder.append('"');
         return builder.toString();
     }
 
@@ -573,21 +647,36 @@ public class JavaCode {
      * @return Print the source code formatted
      */
     public String toCode() {
-        StringBuilder sb = new StringBuilder();
-        for(CodeBlock block : getAllBlocks()) {
-            if (!block.hasParent) sb.append(block.toCode());
+        StringBuilder sb = new StringBuilder(sourceCode != null ? sourceCode.length() : 16);
+        try {
+            toCode(sb);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        // End Of File
-        sb.append("\n");
         return sb.toString();
     }
 
+    /**
+     * Write the JAVA source code (root blocks and their sub blocks), without intermediate copy
+     * @param out Output
+     * @throws IOException Output error
+     */
+    public void toCode(Appendable out) throws IOException {
+        if (this.rootCodeBlocks != null) {
+            for (CodeBlock block : this.rootCodeBlocks) {
+                if (!block.hasParent) block.toCode(out);
+            }
+        }
+        // End Of File
+        out.append("\n");
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
         if (this.rootCodeBlocks != null) {
             for(CodeBlock block : this.rootCodeBlocks) {
-                sb.append(block.code);
+                sb.append(block.getCode());
             }
         }
         return sb.toString();
@@ -0,0 +1,423 @@
+package com.chrisney.enigma.parser;
+
+import com.chrisney.enigma.utils.TextUtils;
+
+import java.util.Arrays;
+
+/**
+ * JAVA Lexer: read the source code once and split it in a flat stream of tokens (words and separators).
+ * Tokens are stored as character offsets into the source code, with the lexer state (comment, string or
+ * annotation) of each token, so that the tree of code blocks can be built without scanning the source code
+ * again. The lexing loop itself doesn't allocate: all tables are sized before the loop.
+ * @author Christopher Ney
+ */
+public class JavaLexer {
+
+    /**
+     * Token kind flag: word (otherwise separator)
+     */
+    private static final byte WORD = 0x20;
+
+    /**
+     * Mask of the lexer state (ordinal of the block type)
+     */
+    private static final byte STATE_MASK = 0x1F;
+
+    private static final CodeBlock.BlockType[] STATES = CodeBlock.BlockType.values();
+
+    /**
+     * Source code
+     */
+    public final String source;
+
+    /**
+     * Start index of the lexed range (included)
+     */
+    public final int from;
+
+    /**
+     * End index of the lexed range (excluded)
+     */
+    public final int to;
+
+    /**
+     * Tokens: start (included) and end (excluded) positions, kind, lexer state and keyword index (see JavaParser.keywordIndex).
+     * Each token owns at least one character, so the tables are sized with the length of the range.
+     */
+    private int[] starts;
+    private int[] ends;
+    private byte[] kinds;
+    private byte[] keywords;
+    private int count = 0;
+
+    /**
+     * String values: start (included) and end (excluded) positions
+     */
+    private final int[] stringStarts;
+    private final int[] stringEnds;
+    private int stringCount = 0;
+
+    /**
+     * Positions of all curly brackets of the source code (including the ones of strings and comments)
+     */
+    private final int[] braces;
+
+    /**
+     * Index (into braces) of the matching bracket, or -1
+     */
+    private final int[] braceMatches;
+
+    /**
+     * Index of the next none empty character, for each character of the source code
+     */
+    private int[] nextNoneEmpty;
+
+    /**
+     * Lex the full source code
+     * @param source JAVA source code
+     */
+    public JavaLexer(String source) {
+        this.source = source;
+        this.from = 0;
+        this.to = source.length();
+
+        // Pre-compute the next none empty characters, and count curly brackets & double quotes:
+        int length = source.length();
+        int braceCount = 0;
+        int quoteCount = 0;
+        this.nextNoneEmpty = new int[length + 1];
+        this.nextNoneEmpty[length] = length;
+        for (int i = length - 1; i >= 0; i--) {
+            char c = source.charAt(i);
+            this.nextNoneEmpty[i] = TextUtils.isEmptyChar(c) ? this.nextNoneEmpty[i + 1] : i;
+            if (c == JavaParser.cCurlyBracketOpen || c == JavaParser.cCurlyBracketClose) braceCount++;
+            else if (c == JavaParser.cDoubleQuote) quoteCount++;
+        }
+
+        this.starts = new int[length];
+        this.ends = new int[length];
+        this.kinds = new byte[length];
+        this.keywords = new byte[length];
+        this.stringStarts = new int[quoteCount / 2 + 1];
+        this.stringEnds = new int[quoteCount / 2 + 1];
+        this.braces = new int[braceCount];
+        this.braceMatches = new int[braceCount];
+
+        this.lex(true);
+    }
+
+    /**
+     * Lex a range of the source code, starting from a neutral state
+     * @param root Lexer of the full source code (curly brackets positions are shared)
+     * @param from Start index of the range (included)
+     * @param to End index of the range (excluded)
+     */
+    public JavaLexer(JavaLexer root, int from, int to) {
+        this.source = root.source;
+        this.from = from;
+        this.to = to;
+        this.nextNoneEmpty = root.nextNoneEmpty;
+        this.braces = root.braces;
+        this.braceMatches = root.braceMatches;
+        this.starts = new int[to - from];
+        this.ends = new int[to - from];
+        this.kinds = new byte[to - from];
+        this.keywords = new byte[to - from];
+        this.stringStarts = null;
+        this.stringEnds = null;
+        this.lex(false);
+    }
+
+    /**
+     * Read the source code range once
+     * @param root True to record the curly brackets and the String values (full source code)
+     */
+    private void lex(boolean root) {
+
+        int counterAnnotationParenthesis = 0;
+
+        int[] braceStack = root ? new int[braces.length] : null;
+        int braceCount = 0;
+        int braceDepth = 0;
+
+        CodeBlock.BlockType currentBlock = CodeBlock.BlockType.Undefined;
+
+        int wordStart = -1;
+        int stringStart = -1;
+
+        for (int i = from; i < to; i++) {
+
+            char prevChar = (i > from) ? source.charAt(i - 1) : ' ';
+            char curChar = source.charAt(i);
+            char nextChar = (i < to - 1) ? source.charAt(i + 1) : ' ';
+
+            // Track String values and comments blocks:
+            if (currentBlock == CodeBlock.BlockType.Undefined) {
+                if (curChar == JavaParser.cDoubleQuote && prevChar != JavaParser.cEscape) {
+                    currentBlock = CodeBlock.BlockType.StringValue;
+                } else if (curChar == JavaParser.cSlash && nextChar == JavaParser.cSlash) {
+                    currentBlock = CodeBlock.BlockType.CommentLine;
+                } else if (curChar == JavaParser.cSlash && nextChar == JavaParser.cStar) {
+                    currentBlock = CodeBlock.BlockType.CommentBlock;
+                } else if (curChar == JavaParser.cAnnotation && counterAnnotationParenthesis == 0 && wordStart == -1) {
+                    currentBlock = CodeBlock.BlockType.Annotation;
+                }
+            } else if (currentBlock == CodeBlock.BlockType.StringValue) {
+                if (curChar == JavaParser.cDoubleQuote && prevChar != JavaParser.cEscape)
+                    currentBlock = CodeBlock.BlockType.Undefined;
+            }
+
+            // Raw curly brackets (bracket matching of the code blocks):
+            if (root) {
+                if (curChar == JavaParser.cCurlyBracketOpen) {
+                    braces[braceCount] = i;
+                    braceMatches[braceCount] = -1;
+                    braceStack[braceDepth++] = braceCount++;
+                } else if (curChar == JavaParser.cCurlyBracketClose) {
+                    braces[braceCount] = i;
+                    braceMatches[braceCount] = -1;
+                    if (braceDepth > 0) braceMatches[braceStack[--braceDepth]] = braceCount;
+                    braceCount++;
+                }
+            }
+
+            // Annotation parenthesis counter:
+            if (currentBlock == CodeBlock.BlockType.Annotation) {
+                if (curChar == JavaParser.cParenthesisOpen) counterAnnotationParenthesis++;
+                if (curChar == JavaParser.cParenthesisClose) counterAnnotationParenthesis--;
+            }
+
+            // String value detection
+            if (!root) {
+                // String values are detected at root level only
+            } else if (currentBlock == CodeBlock.BlockType.StringValue && stringStart == -1) {
+                stringStart = i;
+            } else if (stringStart != -1 && currentBlock != CodeBlock.BlockType.StringValue) {
+                stringStarts[stringCount] = stringStart;
+                stringEnds[stringCount] = i + 1;
+                stringCount++;
+                stringStart = -1;
+            }
+
+            // Start new word:
+            boolean isBreak = TextUtils.inCharactersTable(JavaParser.charBreaksTable, curChar);
+            if (wordStart == -1 && !isBreak) wordStart = i;
+
+            if (TextUtils.isEmptyChar(curChar) || isBreak || isEndBlockComment(currentBlock, curChar, prevChar)) {
+
+                // End of current word:
+                if (wordStart != -1 && wordStart < i) {
+                    addToken(wordStart, i, (byte) (WORD | currentBlock.ordinal()));
+                    keywords[count - 1] = (byte) JavaParser.keywordIndex(source, wordStart, i);
+                }
+
+                // Separator:
+                addToken(i, i + 1, (byte) currentBlock.ordinal());
+
+                wordStart = -1;
+            }
+
+            // Detect end block type:
+            if (currentBlock == CodeBlock.BlockType.CommentLine) {
+                if (TextUtils.isReturnChar(curChar))
+                    currentBlock = CodeBlock.BlockType.Undefined;
+            } else if (currentBlock == CodeBlock.BlockType.CommentBlock) {
+                if (curChar == JavaParser.cSlash && prevChar == JavaParser.cStar)
+                    currentBlock = CodeBlock.BlockType.Undefined;
+            } else if (currentBlock == CodeBlock.BlockType.Annotation && counterAnnotationParenthesis == 0) {
+                if (curChar == JavaParser.cParenthesisClose
+                        || (TextUtils.isEmptyChar(curChar) && Character.isAlphabetic(nextNoneEmptyChar(i + 1, to))))
+                    currentBlock = CodeBlock.BlockType.Undefined;
+            }
+        }
+    }
+
+    /**
+     * Release the memory only needed while parsing (the lexer is kept by the words of the code blocks):
+     * the token tables are trimmed to the number of tokens, and the next none empty characters are dropped.
+     */
+    void trimToSize() {
+        if (starts.length > count) {
+            starts = Arrays.copyOf(starts, count);
+            ends = Arrays.copyOf(ends, count);
+            kinds = Arrays.copyOf(kinds, count);
+            keywords = Arrays.copyOf(keywords, count);
+        }
+        nextNoneEmpty = null;
+    }
+
+    private void addToken(int start, int end, byte kind) {
+        starts[count] = start;
+        ends[count] = end;
+        kinds[count] = kind;
+        count++;
+    }
+
+    /**
+     * Detect end of block Comment
+     * @param currentBlock Current block type
+     * @param curChar Current character
+     * @param prevChar Previous character
+     * @return True if end of block comment is detected
+     */
+    static boolean isEndBlockComment(CodeBlock.BlockType currentBlock, char curChar, char prevChar) {
+        return currentBlock == CodeBlock.BlockType.CommentBlock && curChar == JavaParser.cSlash && prevChar == JavaParser.cStar;
+    }
+
+    /**
+     * Return the next none empty character, before a limit
+     * @param index Current index
+     * @param limit End index (excluded)
+     * @return Next none empty character, or space if not found
+     */
+    public char nextNoneEmptyChar(int index, int limit) {
+        int next = nextNoneEmpty[index];
+        return (next < limit) ? source.charAt(next) : ' ';
+    }
+
+    /**
+     * Return the number of tokens
+     * @return Number of tokens
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Return the token as a CodeString (the value of the word is only created on demand)
+     * @param k Token index
+     * @return Word or separator
+     */
+    public CodeString token(int k) {
+        CodeString token = new CodeString(source, starts[k], ends[k]);
+        int keyword = keywords[k];
+        if (keyword != 0) {
+            token.keyword = JavaParser.keyword(keyword);
+            CodeBlock.BlockType state = state(k);
+            if (state != CodeBlock.BlockType.StringValue && !CodeBlock.isComment(state)) {
+                token.isInstruction = JavaParser.isInstruction(keyword);
+                token.isType = JavaParser.isType(keyword);
+            }
+        }
+        return token;
+    }
+
+    /**
+     * Return the index of the first token closed at (or after) a character position
+     * @param position Character position
+     * @return Token index
+     */
+    public int indexOf(int position) {
+        int low = 0, high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (position(mid) < position) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * Indicate if the token is a word (otherwise it's a separator)
+     * @param k Token index
+     * @return True if the token is a word
+     */
+    public boolean isWord(int k) {
+        return (kinds[k] & WORD) != 0;
+    }
+
+    /**
+     * Character index where the token is closed (end of the word, or position of the separator)
+     * @param k Token index
+     * @return Character index
+     */
+    public int position(int k) {
+        return isWord(k) ? ends[k] : starts[k];
+    }
+
+    /**
+     * Start of the word closed by the separator (can be empty), or -1 if no word was open
+     * @param k Token index of the separator
+     * @return Start of the word
+     */
+    public int wordStart(int k) {
+        if (k > 0 && isWord(k - 1)) return starts[k - 1];
+        return TextUtils.isEmptyChar(source.charAt(starts[k])) ? starts[k] : -1;
+    }
+
+    /**
+     * Lexer state of the token (comment, string value, annotation...)
+     * @param k Token index
+     * @return Lexer state
+     */
+    public CodeBlock.BlockType state(int k) {
+        return STATES[kinds[k] & STATE_MASK];
+    }
+
+    /**
+     * Return the number of String values
+     * @return Number of String values
+     */
+    public int stringCount() {
+        return stringCount;
+    }
+
+    /**
+     * Return the start position of a String value (opening double quote)
+     * @param s String value index
+     * @return Character position
+     */
+    public int stringStart(int s) {
+        return stringStarts[s];
+    }
+
+    /**
+     * Return the end position of a String value (after the closing double quote)
+     * @param s String value index
+     * @return Character position
+     */
+    public int stringEnd(int s) {
+        return stringEnds[s];
+    }
+
+    /**
+     * Return the number of curly brackets of the source code
+     * @return Number of curly brackets
+     */
+    public int braceCount() {
+        return braces.length;
+    }
+
+    /**
+     * Return the position of a curly bracket
+     * @param b Curly bracket index
+     * @return Character position
+     */
+    public int brace(int b) {
+        return braces[b];
+    }
+
+    /**
+     * Return the index of the matching curly bracket
+     * @param b Curly bracket index
+     * @return Index of the matching curly bracket, or -1
+     */
+    public int braceMatch(int b) {
+        return braceMatches[b];
+    }
+
+    /**
+     * Return the index of the first curly bracket at (or after) a character position
+     * @param position Character position
+     * @return Curly bracket index
+     */
+    public int braceIndexOf(int position) {
+        int low = 0, high = braces.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (braces[mid] < position) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+}
@@ -5,6 +5,7 @@ import com.chrisney.enigma.utils.TextUtils;
 import com.chrisney.enigma.utils.Utils;
 
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * JAVA Simple Parser: parse JAVA source code and detects String values
@@ -12,20 +13,20 @@ import java.util.ArrayList;
  */
 public class JavaParser {
 
-    private static final char cCurlyBracketOpen = '{';
-    private static final char cCurlyBracketClose = '}';
-    private static final char cParenthesisOpen = '(';
-    private static final char cParenthesisClose = ')';
-    private static final char cBracketOpen = '[';
-    private static final char cBracketClose = ']';
-    private static final char cDoubleQuote = '"';
+    static final char cCurlyBracketOpen = '{';
+    static final char cCurlyBracketClose = '}';
+    static final char cParenthesisOpen = '(';
+    static final char cParenthesisClose = ')';
+    static final char cBracketOpen = '[';
+    static final char cBracketClose = ']';
+    static final char cDoubleQuote = '"';
     private static final char cComma = ',';
     private static final char cSemicolon = ';';
 
-    private static final char cSlash = '/';
-    private static final char cStar = '*';
-    private static final char cEscape = '\\';
-    private static final char cAnnotation = '@';
+    static final char cSlash = '/';
+    static final char cStar = '*';
+    static final char cEscape = '\\';
+    static final char cAnnotation = '@';
     private static final char cColon = ':';
 
     private static final String sLineComment = "//";
@@ -35,6 +36,8 @@ public class JavaParser {
     private static final char[] charBreaks = {cCurlyBracketOpen, cCurlyBracketClose, cParenthesisOpen,
             cParenthesisClose, cBracketOpen, cBracketClose, cDoubleQuote, cComma, cSemicolon};
 
+    static final boolean[] charBreaksTable = TextUtils.toCharactersTable(charBreaks);
+
     private static final String sPackage = "package";
     private static final String sImport = "import";
     private static final String sClass = "class";
@@ -113,6 +116,15 @@ public class JavaParser {
             tList, tArrayList, tMap, tHashMap, tHashSet, tHashTable, tStringBuilder, tObject, tNumber, tEnum, tException
     };
 
+    private static final String[] keywordsAndTypes = new String[keywords.length + types.length];
+
+    static {
+        System.arraycopy(keywords, 0, keywordsAndTypes, 0, keywords.length);
+        System.arraycopy(types, 0, keywordsAndTypes, keywords.length, types.length);
+    }
+
+    private static final KeywordTable keywordTable = new KeywordTable(keywordsAndTypes);
+
     /**
      * Constructor
      */
@@ -125,152 +137,107 @@ public class JavaParser {
      */
     public JavaCode parse(String sourceCode) {
         ArrayList<CodeString> strings = new ArrayList<>();
-        ArrayList<CodeBlock> blocks = this.parse(sourceCode, null, strings, 0);
+        JavaLexer lexer = new JavaLexer(sourceCode);
+        ArrayList<CodeBlock> blocks = this.parse(lexer, 0, sourceCode.length(), null, strings);
+        lexer.trimToSize();
         return new JavaCode(blocks, strings, sourceCode);
     }
 
     /**
-     * Parse JAVA File
-     * @param source JAVA source code
+     * Build the code blocks of a range of the source code, from the tokens of the lexer
+     * @param root Lexer of the full source code
+     * @param from Start index of the range (included)
+     * @param to End index of the range (excluded)
      * @param parent Parent block (optional)
+     * @param strings String values found (root level only)
      * @return Code blocks
      */
-    private ArrayList<CodeBlock> parse(String source, CodeBlock parent, ArrayList<CodeString> strings, int offset) {
+    private ArrayList<CodeBlock> parse(JavaLexer root, int from, int to, CodeBlock parent, ArrayList<CodeString> strings) {
 
         ArrayList<CodeBlock> blocks = new ArrayList<>();
+        String source = root.source;
 
-        int counterCurlyBrackets = 0;
-        int counterParenthesis = 0;
-        int counterBrackets = 0;
-        int counterAnnotationParenthesis = 0;
+        JavaLexer lexer = (parent == null) ? root : getSubLexer(root, from, to);
+        int first = lexer.indexOf(from);
+        int last = lexer.indexOf(to);
 
-        CodeBlock.BlockType currentBlock = CodeBlock.BlockType.Undefined;
+        // Brackets counters (relative to the start of the range):
+        int counterCurlyBrackets = 0, counterParenthesis = 0, counterBrackets = 0;
 
-        CodeString word = null;
-        CodeString string = null;
+        int stringIndex = 0;
         CodeBlock block = null;
+        CodeWords words = null;
 
-        for (int i = 0; i < source.length(); i++) {
-
-            Character prevChar = (i > 0) ? source.charAt(i - 1) : ' ';
-            Character curChar = source.charAt(i);
-            Character nextChar = (i < source.length() - 1) ? source.charAt(i + 1) : ' ';
-            Character nextNoneEmptyChar = getNextNoneEmptyChar(source, i + 1);
-
-            // Track String values and comments blocks:
-            if (currentBlock == CodeBlock.BlockType.Undefined) {
-                if (curChar.equals(cDoubleQuote) && !prevChar.equals(cEscape)) {
-                    currentBlock = CodeBlock.BlockType.StringValue;
-                } else if (curChar.equals(cSlash) && nextChar.equals(cSlash)) {
-                    currentBlock = CodeBlock.BlockType.CommentLine;
-                } else if (curChar.equals(cSlash) && nextChar.equals(cStar)) {
-                    currentBlock = CodeBlock.BlockType.CommentBlock;
-                } else if (curChar.equals(cAnnotation) && counterAnnotationParenthesis == 0 && word == null) {
-                    currentBlock = CodeBlock.BlockType.Annotation;
-                }
-            } else if (currentBlock == CodeBlock.BlockType.StringValue) {
-                if (curChar.equals(cDoubleQuote) && !prevChar.equals(cEscape))
-                    currentBlock = CodeBlock.BlockType.Undefined;
-            }
+        for (int k = first; k < last; k++) {
 
-            // Brackets & parenthesis counters:
-            if (currentBlock != CodeBlock.BlockType.CommentLine && currentBlock != CodeBlock.BlockType.CommentBlock) {
-                if (curChar.equals(cCurlyBracketOpen)) counterCurlyBrackets++;
-                if (curChar.equals(cCurlyBracketClose)) counterCurlyBrackets--;
-                if (curChar.equals(cParenthesisOpen)) counterParenthesis++;
-                if (curChar.equals(cParenthesisClose)) counterParenthesis--;
-                if (curChar.equals(cBracketOpen)) counterBrackets++;
-                if (curChar.equals(cBracketClose)) counterBrackets--;
-                if (currentBlock == CodeBlock.BlockType.Annotation) {
-                    if (curChar.equals(cParenthesisOpen)) counterAnnotationParenthesis++;
-                    if (curChar.equals(cParenthesisClose)) counterAnnotationParenthesis--;
-                }
+            if (lexer.isWord(k)) continue;
+
+            int i = lexer.position(k);
+            char curChar = source.charAt(i);
+            CodeBlock.BlockType currentBlock = lexer.state(k);
+
+            // Count brackets (outside comments):
+            if (!CodeBlock.isComment(currentBlock)) {
+                if (curChar == cCurlyBracketOpen) counterCurlyBrackets++;
+                else if (curChar == cCurlyBracketClose) counterCurlyBrackets--;
+                else if (curChar == cParenthesisOpen) counterParenthesis++;
+                else if (curChar == cParenthesisClose) counterParenthesis--;
+                else if (curChar == cBracketOpen) counterBrackets++;
+                else if (curChar == cBracketClose) counterBrackets--;
             }
 
             // String value detection
-            if  (parent == null && strings != null) {
-                if (currentBlock == CodeBlock.BlockType.StringValue && string == null) {
-                    string = new CodeString(i);
-                } else if (string != null && currentBlock != CodeBlock.BlockType.StringValue) {
-                    string.end = i + 1;
-                    string.value = source.substring(string.start, string.end);
-                    string.isCaseValue = (block != null) && isSwitchCaseValue(block.words, string.value, nextNoneEmptyChar);
-                    strings.add(string);
-                    string = null;
+            if (strings != null) {
+                while (stringIndex < lexer.stringCount() && lexer.stringEnd(stringIndex) <= i + 1) {
+                    strings.add(getStringValue(lexer, stringIndex++, block, to));
                 }
             }
 
-            // Start new word:
-            if (word == null && !TextUtils.inCharactersList(charBreaks, curChar)) {
-                word = new CodeString(i);
+            // End of current word:
+            if (lexer.wordStart(k) != -1) {
 
-            }
-            if (TextUtils.isEmptyChar(curChar) || TextUtils.inCharactersList(charBreaks, curChar) ||
-                    isEndBlockComment(currentBlock, curChar, prevChar)
-            ) {
-
-                // End of current word, then create word object:
-                if (word != null) {
-                    word.end = i;
-                    word.value = source.substring(word.start, word.end);
-                    if (currentBlock != CodeBlock.BlockType.StringValue
-                            && currentBlock != CodeBlock.BlockType.CommentBlock
-                            && currentBlock != CodeBlock.BlockType.CommentLine) {
-                        word.isInstruction = isInstruction(word.value);
-                        word.isType = isType(word.value);
+                // New Block detection:
+                if (block == null) {
+                    block = new CodeBlock();
+                    block.offset = from;
+                    if  (parent != null) {
+                        block.hasParent = true;
+                        block.parentType = parent.type;
                     }
-
-                    // New Block detection:
-                    if (block == null) {
-                        block = new CodeBlock();
-                        block.offset = offset;
-                        if  (parent != null) {
-                            block.hasParent = true;
-                            block.parentType = parent.type;
-                        }
-                        block.start = i - word.value.length();
-                    }
-
-                    // Add word to current block:
-                    if (!word.value.isEmpty()) block.words.add(word);
+                    block.start = lexer.wordStart(k) - from;
                 }
 
-                // Start new word:
-                word = new CodeString(i);
-                word.end = i;
-                word.value = String.valueOf(curChar);
-
-                // Add words to current block:
-                if (block != null && !word.value.isEmpty()) block.words.add(word);
-                word = null;
+                // Add word to current block:
+                if (words == null) {
+                    words = new CodeWords(lexer, (k > first && lexer.isWord(k - 1)) ? k - 1 : k);
+                    block.words = words;
+                }
             }
 
+            // Add separator to current block:
+            if (block != null) words.last = k + 1;
+
             // Detect END of block
             if (block != null) {
 
-                if ((
-                        isEndOfCodeBlock(currentBlock, curChar, nextNoneEmptyChar) // End of Line of code, End of Class, Function, Condition, Loop...
-                        || isEndAnnotation(currentBlock, curChar, nextNoneEmptyChar, counterParenthesis) // End of Annotation
+                if (counterCurlyBrackets == 0 && counterParenthesis == 0 && counterBrackets == 0 && (
+                        isEndOfCodeBlock(currentBlock, curChar, lexer, i, to) // End of Line of code, End of Class, Function, Condition, Loop...
+                        || isEndAnnotation(currentBlock, curChar, lexer, i, to, counterParenthesis) // End of Annotation
                         || (isEndCommentLine(currentBlock, curChar)) // End of Comment line
-                        || isEndBlockComment(currentBlock, curChar, prevChar) // End of Comment Block
-                ) && counterCurlyBrackets == 0 && counterParenthesis == 0 && counterBrackets == 0) {
+                        || JavaLexer.isEndBlockComment(currentBlock, curChar, (i > from) ? source.charAt(i - 1) : ' ') // End of Comment Block
+                )) {
 
-                    block.end = i + 1;
-                    block.code = source.substring(block.start, block.end);
+                    block.end = i + 1 - from;
+                    block.setSource(source, block.start + from, i + 1);
 
                     // Analyze sub source code:
                     if (!CodeBlock.isComment(currentBlock))
-                        block.subIndexes = getSubBlockIndexes(block);
+                        block.subIndexes = getSubBlockIndexes(root, block);
 
                     if (Utils.arrayNotEmpty(block.subIndexes)) {
 
                         for (CodePosition subIndexes : block.subIndexes) {
 
-                            // Safe substring: important if method doesn't contains any sub code
-                            // Example:
-                            //      public void onStateTransitionStart(LauncherState toState) {}
-                            String subCode = TextUtils.safeSubstring(block.code, subIndexes.start, subIndexes.end);
-
                             // Set block type:
                             block.type = getBlockType(block, true);
                             // Search block name and properties:
@@ -279,9 +246,12 @@ public class JavaParser {
                             // Compute the sub block offset (chars index):
                             int subBlockOffset = block.start + block.offset + subIndexes.start;
 
-                            // Parse the sub block:
-                            if (subCode != null) {
-                                ArrayList<CodeBlock> subBlocks = this.parse(subCode, block, null, subBlockOffset);
+                            // Parse the sub block: important if method doesn't contains any sub code
+                            // Example:
+                            //      public void onStateTransitionStart(LauncherState toState) {}
+                            if (subIndexes.isValid()) {
+                                int subBlockEnd = block.start + block.offset + subIndexes.end;
+                                ArrayList<CodeBlock> subBlocks = this.parse(root, subBlockOffset, subBlockEnd, block, null);
                                 for (CodeBlock subBlock : subBlocks) {
                                     subBlock.innerOffset = subIndexes.start;
                                 }
@@ -306,74 +276,130 @@ public class JavaParser {
                         block.type = CodeBlock.BlockType.Constructor;
                     }
 
-                    // Detect empty spaces (line breaks...)
-                    if (blocks.size() > 0) {
-                        CodeBlock lastBlock = blocks.get(blocks.size() - 1);
-                        CodeBlock emptyBlock = new CodeBlock();
-                        emptyBlock.start = lastBlock.end;
-                        emptyBlock.end = block.start;
-                        emptyBlock.code = source.substring(emptyBlock.start, emptyBlock.end);
-                        System.out.print(emptyBlock.code);
-                    }
-
                     blocks.add(block);
                     block = null;
+                    words = null;
                 }
             }
+        } // End for loop
 
-            // Detect end block type:
-            if (currentBlock == CodeBlock.BlockType.CommentLine) {
-                if (TextUtils.isReturnChar(curChar))
-                    currentBlock = CodeBlock.BlockType.Undefined;
-            } else if (currentBlock == CodeBlock.BlockType.CommentBlock) {
-                if (curChar.equals(cSlash) && prevChar.equals(cStar))
-                    currentBlock = CodeBlock.BlockType.Undefined;
-            } else if (currentBlock == CodeBlock.BlockType.Annotation) {
-                if (isEndAnnotation(currentBlock, curChar, nextNoneEmptyChar, counterAnnotationParenthesis))
-                    currentBlock = CodeBlock.BlockType.Undefined;
+        // String values closed at the end of the source code:
+        if (strings != null) {
+            while (stringIndex < lexer.stringCount()) {
+                strings.add(getStringValue(lexer, stringIndex++, block, to));
             }
-
-        } // End for loop
+        }
 
         return blocks;
     }
 
-    private SmartArrayList<CodePosition> getSubBlockIndexes(CodeBlock block) {
+    /**
+     * Create the String value found by the lexer
+     * @param lexer Lexer of the full source code
+     * @param s String value index
+     * @param block Current block (words before the String value)
+     * @param to End index of the range
+     * @return String value
+     */
+    private CodeString getStringValue(JavaLexer lexer, int s, CodeBlock block, int to) {
+        CodeString string = new CodeString(lexer.source, lexer.stringStart(s), lexer.stringEnd(s));
+        char nextNoneEmptyChar = lexer.nextNoneEmptyChar(string.end, to);
+        string.isCaseValue = (block != null) && isSwitchCaseValue(block.words, string.getValue(), nextNoneEmptyChar);
+        return string;
+    }
+
+    /**
+     * Return the lexer to use for a sub block. The tokens of the full source code are reused, unless the
+     * sub block starts inside a String value, a comment or an annotation (example: a curly bracket in a
+     * String value): in this case only the range of the sub block is lexed again, from a neutral state.
+     * @param root Lexer of the full source code
+     * @param from Start index of the sub block (included)
+     * @param to End index of the sub block (excluded)
+     * @return Lexer of the sub block
+     */
+    private JavaLexer getSubLexer(JavaLexer root, int from, int to) {
+        int k = root.indexOf(from) - 1;
+        if (k >= 0 && root.position(k) == from - 1
+                && root.state(k) == CodeBlock.BlockType.Undefined
+                && root.source.charAt(to - 1) != cSlash) {
+            return root;
+        }
+        return new JavaLexer(root, from, to);
+    }
+
+    /**
+     * Return the positions of the sub blocks (first level of curly brackets), from the bracket matching
+     * of the lexer.
+     * @param lexer Lexer of the full source code
+     * @param block Block to analyse
+     * @return Sub block positions (relative to the block code)
+     */
+    private SmartArrayList<CodePosition> getSubBlockIndexes(JavaLexer lexer, CodeBlock block) {
         SmartArrayList<CodePosition> indexes = new SmartArrayList<>();
-        int j;
+        String source = lexer.source;
+        int blockStart = block.getStart();
+        int blockEnd = block.getEnd();
         int counterCurlyBracket = 0;
-        char previousNoneEmptyChar = ' ';
-        for (j = 0; j < block.code.length(); j++) {
 
-            char c = block.code.charAt(j);
+        int b = lexer.braceIndexOf(blockStart);
+        while (b < lexer.braceCount() && lexer.brace(b) < blockEnd) {
 
-            if (c == cCurlyBracketOpen) counterCurlyBracket++;
-            if (c == cCurlyBracketClose) counterCurlyBracket--;
+            int j = lexer.brace(b);
 
-            if (c == cCurlyBracketOpen && counterCurlyBracket == 1 && previousNoneEmptyChar != cBracketClose) {
-                indexes.add(new CodePosition(j + 1));
-            } else if (c == cCurlyBracketClose && counterCurlyBracket == 0 && indexes.size() > 0) {
-                indexes.get(indexes.size() -1).end = j - 1;
-            }
+            if (source.charAt(j) == cCurlyBracketOpen) {
+                counterCurlyBracket++;
+                if (counterCurlyBracket == 1) {
+                    if (getPreviousNoneEmptyChar(source, j - 1, blockStart) != cBracketClose)
+                        indexes.add(new CodePosition(j + 1 - blockStart));
 
-            if (!TextUtils.isEmptyChar(c)) previousNoneEmptyChar = c;
+                    // Jump to the matching bracket:
+                    int match = lexer.braceMatch(b);
+                    if (match == -1 || lexer.brace(match) >= blockEnd) break;
+                    if (indexes.size() > 0) indexes.last().end = lexer.brace(match) - 1 - blockStart;
+                    counterCurlyBracket = 0;
+                    b = match + 1;
+                    continue;
+                }
+            } else {
+                counterCurlyBracket--;
+                if (counterCurlyBracket == 0 && indexes.size() > 0) indexes.last().end = j - 1 - blockStart;
+            }
+            b++;
         }
         return indexes;
     }
 
+    /**
+     * Return the previous none empty character
+     * @param data String data
+     * @param index Current index
+     * @param limit Start index (included)
+     * @return Previous none empty character, or space if not found
+     */
+    private char getPreviousNoneEmptyChar(String data, int index, int limit) {
+        while (index >= limit) {
+            char c = data.charAt(index);
+            if (!TextUtils.isEmptyChar(c)) return c;
+            index--;
+        }
+        return ' ';
+    }
+
     /**
      * Detect end of Line of code, End of Class, Function, Condition, Loop...
      * @param currentBlock Current block type
      * @param curChar Current character
-     * @param nextNoneEmptyChar Next character non empty (if exists)
+     * @param lexer Lexer (to search the next character non empty)
+     * @param i Current index
+     * @param to End index of the range
      * @return True if end of block
      */
-    private boolean isEndOfCodeBlock(CodeBlock.BlockType currentBlock, Character curChar, Character nextNoneEmptyChar) {
+    private boolean isEndOfCodeBlock(CodeBlock.BlockType currentBlock, char curChar, JavaLexer lexer, int i, int to) {
         return !CodeBlock.isComment(currentBlock)
             && currentBlock != CodeBlock.BlockType.StringValue
             && (
-                    curChar.equals(cSemicolon) ||
-                    (curChar.equals(cCurlyBracketClose) && !nextNoneEmptyChar.equals(cSemicolon))
+                    curChar == cSemicolon ||
+                    (curChar == cCurlyBracketClose && lexer.nextNoneEmptyChar(i + 1, to) != cSemicolon)
             );
     }
 
@@ -381,13 +407,15 @@ public class JavaParser {
      * Detect end of block annotation
      * @param currentBlock Current block type
      * @param curChar Current character
-     * @param nextNoneEmptyChar Next character non empty (if exists)
+     * @param lexer Lexer (to search the next character non empty)
+     * @param i Current index
+     * @param to End index of the range
      * @param parenthesisCounter Parenthesis counter
      * @return True if end of block annotation is detected
      */
-    private boolean isEndAnnotation(CodeBlock.BlockType currentBlock, Character curChar, Character nextNoneEmptyChar, int parenthesisCounter) {
+    private boolean isEndAnnotation(CodeBlock.BlockType currentBlock, char curChar, JavaLexer lexer, int i, int to, int parenthesisCounter) {
         if (currentBlock == CodeBlock.BlockType.Annotation && parenthesisCounter == 0) {
-            if (curChar.equals(cParenthesisClose) || (TextUtils.isEmptyChar(curChar) && Character.isAlphabetic(nextNoneEmptyChar))) {
+            if (curChar == cParenthesisClose || (TextUtils.isEmptyChar(curChar) && Character.isAlphabetic(lexer.nextNoneEmptyChar(i + 1, to)))) {
                 return true;
             }
         }
@@ -400,51 +428,10 @@ public class JavaParser {
      * @param curChar Current character
      * @return True if end of line of Comment is detected
      */
-    private boolean isEndCommentLine(CodeBlock.BlockType currentBlock, Character curChar) {
+    private boolean isEndCommentLine(CodeBlock.BlockType currentBlock, char curChar) {
         return currentBlock == CodeBlock.BlockType.CommentLine && TextUtils.isReturnChar(curChar);
     }
 
-    /**
-     * Detect end of block Comment
-     * @param currentBlock Current block type
-     * @param curChar Current character
-     * @param prevChar Previous character
-     * @return True if end of block comment is detected
-     */
-    private boolean isEndBlockComment(CodeBlock.BlockType currentBlock, Character curChar, Character prevChar) {
-        return currentBlock == CodeBlock.BlockType.CommentBlock && curChar.equals(cSlash) && prevChar.equals(cStar);
-    }
-
-    /**
-     * Return the none empty character
-     * @param data String data
-     * @param index  current index
-     * @return Next none empty character
-     */
-    private char getNextNoneEmptyChar(String data, int index) {
-        char c = ' ';
-        while (index < data.length()) {
-            if (!TextUtils.isEmptyChar(data.charAt(index))) {
-                c = data.charAt(index);
-                break;
-            }
-            index++;
-        }
-        return c;
-    }
-
-    /**
-     * Return True is the keyword is a native Java type
-     * @param word Keyword
-     * @return True is the keyword is a native Java type
-     */
-    private boolean isType(String word) {
-        for (String t : types) {
-            if (t.equals(word)) return true;
-        }
-        return false;
-    }
-
     /**
      * Check if the string value is a switch/case value condition, example: case "RoundedSquare":
      * @param words Words before the String value to test
@@ -452,36 +439,72 @@ public class JavaParser {
      * @param nextNoneEmptyChar Next none empty character
      * @return True if the string value is a switch/case value condition
      */
-    private boolean isSwitchCaseValue(ArrayList<CodeString> words, String value, char nextNoneEmptyChar) {
+    private boolean isSwitchCaseValue(List<CodeString> words, String value, char nextNoneEmptyChar) {
         String sDoubleQuote = String.valueOf(cDoubleQuote);
         if (nextNoneEmptyChar != cColon || !value.startsWith(sDoubleQuote) || !value.endsWith(sDoubleQuote)) return false;
 
         CodeString prevNonEmptyWord = null;
         for (int i = words.size() - 1; i > 0; i--) {
             prevNonEmptyWord = words.get(i);
-            String v = prevNonEmptyWord.value;
-            if (!TextUtils.isEmpty(v) && !TextUtils.isSpace(v) && !TextUtils.isEqualsToChar(v, cDoubleQuote)) break;
+            if (!prevNonEmptyWord.isBlank() && prevNonEmptyWord.charAt(0) != cDoubleQuote) break;
         }
 
         if (prevNonEmptyWord == null) return false;
-        return sCase.equals(prevNonEmptyWord.value);
+        return isKeyword(prevNonEmptyWord, sCase);
+    }
+
+    /**
+     * Return the index of the keyword or native Java type equal to a word of the source code
+     * @param source Source code
+     * @param start Word start position (included)
+     * @param end Word end position (excluded)
+     * @return Keyword index, or 0 if the word isn't a keyword or a native Java type
+     */
+    static int keywordIndex(String source, int start, int end) {
+        return keywordTable.indexOf(source, start, end);
+    }
+
+    /**
+     * Return the keyword or native Java type of an index
+     * @param index Keyword index (see keywordIndex)
+     * @return Keyword (constant of the parser), or null
+     */
+    static String keyword(int index) {
+        return (index > 0) ? keywordsAndTypes[index - 1] : null;
     }
 
     /**
-     * Return True is the keyword is a Java instruction
-     * @param word Keyword
+     * Return True is the keyword index is a Java instruction
+     * @param index Keyword index (see keywordIndex)
      * @return True is the keyword is a Java instruction
      */
-    private static boolean isInstruction(String word) {
-        for (String k : keywords) {
-            if (k.equalsIgnoreCase(word)) return true;
-        }
-        return false;
+    static boolean isInstruction(int index) {
+        return index > 0 && index <= keywords.length;
+    }
+
+    /**
+     * Return True is the keyword index is a native Java type
+     * @param index Keyword index (see keywordIndex)
+     * @return True is the keyword is a native Java type
+     */
+    static boolean isType(int index) {
+        return index > keywords.length;
+    }
+
+    /**
+     * Indicate if the word is a keyword. Keywords are resolved once by the lexer to the constants of the
+     * parser, so they are compared by reference.
+     * @param word Word to test
+     * @param keyword Keyword (constant of the parser)
+     * @return True if the word is the keyword
+     */
+    private static boolean isKeyword(CodeString word, String keyword) {
+        return word.keyword == keyword;
     }
 
-    private static boolean isBreakCharacter(String word) {
+    private static boolean isBreakCharacter(CodeString word) {
         if (word.length() == 1)
-            return TextUtils.inCharactersList(charBreaks, word.charAt(0));
+            return TextUtils.inCharactersTable(charBreaksTable, word.charAt(0));
         return false;
     }
 
@@ -503,8 +526,8 @@ public class JavaParser {
         String annotationName = null;
         String at = String.valueOf(cAnnotation);
         for(CodeString word : block.words) {
-            if (word.value.startsWith(at)) {
-                annotationName = word.value.replace(at, "");
+            if (word.startsWith(at)) {
+                annotationName = word.getValue().replace(at, "");
                 break;
             }
         }
@@ -514,13 +537,13 @@ public class JavaParser {
     private void parseFunction(CodeBlock block) {
         String typeName = null;
         for(CodeString word : block.words) {
-            if (isBreakCharacter(word.value)) break;
-            parseModifier(block, word.value);
-            if (!word.isInstruction && !TextUtils.isEmpty(word.value.trim())) {
+            if (isBreakCharacter(word)) break;
+            parseModifier(block, word);
+            if (!word.isInstruction && !word.isBlank()) {
                 if (typeName == null) {
-                    typeName = word.value;
+                    typeName = word.getValue();
                 } else {
-                    block.name = word.value;
+                    block.name = word.getValue();
                     block.returnType = typeName;
                     return;
                 }
@@ -533,45 +556,45 @@ public class JavaParser {
     private static void parsePackageOrImportName(CodeBlock block) {
         StringBuilder sb = new StringBuilder();
         for(CodeString word : block.words) {
-            if (isBreakCharacter(word.value)) break;
-            if (!TextUtils.isEmpty(word.value.trim()) && !isBreakCharacter(word.value) && !isInstruction(word.value))
-                sb.append(word.value);
+            if (isBreakCharacter(word)) break;
+            if (!word.isBlank() && !isBreakCharacter(word) && !word.isInstruction)
+                sb.append(word.getValue());
         }
         block.name = sb.toString();
     }
 
-    private boolean hasModifier(ArrayList<CodeString> words) {
+    private boolean hasModifier(List<CodeString> words) {
         if (words == null) return false;
         CodeString firstWord = getFirstNoneEmptyWord(words);
         if (firstWord == null) return false;
-        return (sPublic.equals(firstWord.value) || sPrivate.equals(firstWord.value) || sProtected.equals(firstWord.value));
+        return (isKeyword(firstWord, sPublic) || isKeyword(firstWord, sPrivate) || isKeyword(firstWord, sProtected));
     }
 
     private void parseModifier(CodeBlock block) {
         CodeString firstWord = getFirstNoneEmptyWord(block.words);
-        if (firstWord != null) parseModifier(block, firstWord.value);
+        if (firstWord != null) parseModifier(block, firstWord);
     }
 
-    private void parseModifier(CodeBlock block, String word) {
-        if (sPublic.equals(word)) block.modifier = CodeBlock.Modifier.Public;
-        if (sPrivate.equals(word)) block.modifier = CodeBlock.Modifier.Private;
-        if (sProtected.equals(word)) block.modifier = CodeBlock.Modifier.Protected;
+    private void parseModifier(CodeBlock block, CodeString word) {
+        if (isKeyword(word, sPublic)) block.modifier = CodeBlock.Modifier.Public;
+        if (isKeyword(word, sPrivate)) block.modifier = CodeBlock.Modifier.Private;
+        if (isKeyword(word, sProtected)) block.modifier = CodeBlock.Modifier.Protected;
     }
 
     private void parseClassName(CodeBlock block) {
         for(CodeString word : block.words) {
-            if (isBreakCharacter(word.value)) break;
-            parseModifier(block, word.value);
-            if (!word.isInstruction && !word.isType && !TextUtils.isEmpty(word.value.trim()))
-                block.name = word.value;
+            if (isBreakCharacter(word)) break;
+            parseModifier(block, word);
+            if (!word.isInstruction && !word.isType && !word.isBlank())
+                block.name = word.getValue();
         }
     }
 
     private boolean isEmptyWord(CodeString word) {
-        return word.value == null || TextUtils.isEmpty(word.value.trim());
+        return word.isBlank();
     }
 
-    private CodeString getFirstNoneEmptyWord(ArrayList<CodeString> words) {
+    private CodeString getFirstNoneEmptyWord(List<CodeString> words) {
         for (CodeString word : words) {
             if (!isEmptyWord(word)) return word;
         }
@@ -585,15 +608,15 @@ public class JavaParser {
             CodeString firstWord = getFirstNoneEmptyWord(block.words);
             if (firstWord == null) return CodeBlock.BlockType.Undefined;
 
-            if (firstWord.value.startsWith(String.valueOf(cAnnotation))) return CodeBlock.BlockType.Annotation;
-            if (firstWord.value.equals(sIf) || firstWord.value.equals(sElse) || firstWord.value.equals(sSwitch))
+            if (firstWord.startsWith(String.valueOf(cAnnotation))) return CodeBlock.BlockType.Annotation;
+            if (isKeyword(firstWord, sIf) || isKeyword(firstWord, sElse) || isKeyword(firstWord, sSwitch))
                 return CodeBlock.BlockType.Condition;
-            if (firstWord.value.equals(sFor) || firstWord.value.equals(sWhile)) return CodeBlock.BlockType.Loop;
-            if (firstWord.value.equals(sTry) || firstWord.value.equals(sCatch)) return CodeBlock.BlockType.TryCatch;
+            if (isKeyword(firstWord, sFor) || isKeyword(firstWord, sWhile)) return CodeBlock.BlockType.Loop;
+            if (isKeyword(firstWord, sTry) || isKeyword(firstWord, sCatch)) return CodeBlock.BlockType.TryCatch;
 
             for (CodeString word : block.words) {
-                if (word.value.equals(sClass)) return CodeBlock.BlockType.Class;
-                if (word.value.equals(sInterface)) return CodeBlock.BlockType.Interface;
+                if (isKeyword(word, sClass)) return CodeBlock.BlockType.Class;
+                if (isKeyword(word, sInterface)) return CodeBlock.BlockType.Interface;
             }
 
             if (!CodeBlock.isClass(block.parentType))
@@ -605,19 +628,19 @@ public class JavaParser {
             CodeString firstWord = getFirstNoneEmptyWord(block.words);
             if (firstWord == null) return CodeBlock.BlockType.Undefined;
 
-            if (firstWord.value.equals(sPackage)) return CodeBlock.BlockType.Package;
-            if (firstWord.value.equals(sImport)) return CodeBlock.BlockType.Import;
-            if (firstWord.value.startsWith(String.valueOf(cAnnotation))) return CodeBlock.BlockType.Annotation;
-            if (firstWord.value.equals(sIf) || firstWord.value.equals(sElse) || firstWord.value.equals(sSwitch))
+            if (isKeyword(firstWord, sPackage)) return CodeBlock.BlockType.Package;
+            if (isKeyword(firstWord, sImport)) return CodeBlock.BlockType.Import;
+            if (firstWord.startsWith(String.valueOf(cAnnotation))) return CodeBlock.BlockType.Annotation;
+            if (isKeyword(firstWord, sIf) || isKeyword(firstWord, sElse) || isKeyword(firstWord, sSwitch))
                 return CodeBlock.BlockType.Condition;
-            if (firstWord.value.equals(sFor) || firstWord.value.equals(sWhile)) return CodeBlock.BlockType.Loop;
-            if (firstWord.value.equals(sReturn)) return CodeBlock.BlockType.Return;
-            if (firstWord.value.startsWith(sBlockCommentStart)) return CodeBlock.BlockType.CommentBlock;
-            if (firstWord.value.startsWith(sLineComment)) return CodeBlock.BlockType.CommentLine;
+            if (isKeyword(firstWord, sFor) || isKeyword(firstWord, sWhile)) return CodeBlock.BlockType.Loop;
+            if (isKeyword(firstWord, sReturn)) return CodeBlock.BlockType.Return;
+            if (firstWord.startsWith(sBlockCommentStart)) return CodeBlock.BlockType.CommentBlock;
+            if (firstWord.startsWith(sLineComment)) return CodeBlock.BlockType.CommentLine;
 
             for (CodeString word : block.words) {
                 if (isEmptyWord(word)) continue;
-                if (word.value.equals(sStatic)) return CodeBlock.BlockType.Attribute;
+                if (isKeyword(word, sStatic)) return CodeBlock.BlockType.Attribute;
             }
         }
 
@@ -0,0 +1,406 @@
+package com.chrisney.enigma.parser;
+
+import com.chrisney.enigma.utils.CipherCache;
+import com.chrisney.enigma.utils.TextUtils;
+import com.chrisney.enigma.utils.Utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fast scan of a JAVA source code for the string values to encrypt, without building the code blocks tree.
+ * Only the comment, string, char and annotation states are tracked, plus the few positions needed to add the
+ * import of Enigma and to inject the fake keys. The source code is only modified by splices (original text kept).
+ * @author Christopher Ney
+ */
+public class JavaStrings {
+
+    /**
+     * Original source code
+     */
+    private final String source;
+
+    /**
+     * String values (with switch/case values flagged)
+     */
+    private final ArrayList<CodeString> stringValues = new ArrayList<>();
+
+    /**
+     * Modifications of the source code
+     */
+    private final CodeEdits edits = new CodeEdits();
+
+    /**
+     * Encrypted values written as Latin-1 packed string literals instead of byte arrays (see JavaCode.getEnigmaCode)
+     */
+    public boolean compactLiterals = false;
+
+    /**
+     * Slot of each encrypted value added to the decryption calls (see JavaCode.cacheSlots)
+     */
+    public boolean cacheSlots = false;
+
+    /**
+     * Position after the last import (or -1)
+     */
+    private int importEnd = -1;
+
+    /**
+     * Position after the package declaration (or -1)
+     */
+    private int packageEnd = -1;
+
+    /**
+     * Position after the opening brace of the first class (or -1)
+     */
+    private int classBodyStart = -1;
+
+    /**
+     * Position after the opening brace of the first function of the first class (or -1)
+     */
+    private int functionBodyStart = -1;
+
+    /**
+     * Constructor: scan the source code
+     * @param source JAVA source code
+     */
+    public JavaStrings(String source) {
+        this.source = source;
+        scan();
+    }
+
+    /**
+     * Return all string values of the source code (except into annotations)
+     * @return List of string values
+     */
+    public ArrayList<CodeString> getStringValues() {
+        return stringValues;
+    }
+
+    /**
+     * Indicate if the source code contains string values to encrypt (except switch/case values)
+     * @return True if at least one string value to encrypt
+     */
+    public boolean hasStringsToEncrypt() {
+        for (CodeString cs : stringValues) {
+            if (!cs.isCaseValue) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Add an import after the last import (or the package declaration)
+     * @param packageName Package name of the class to import
+     */
+    public void addImport(String packageName) {
+        int position = (importEnd > -1) ? importEnd : packageEnd;
+        if (position > -1) edits.add(position, position, "\nimport " + packageName.trim() + ";");
+    }
+
+    /**
+     * Encrypt all string values
+     * @param key Secret key
+     * @param functionName Name of the decryption function
+     * @throws Exception Encryption error
+     */
+    public void encryptStrings(String key, String functionName) throws Exception {
+        encryptStrings(key, functionName, null);
+    }
+
+    /**
+     * Encrypt all string values
+     * @param key Secret key
+     * @param functionName Name of the decryption function
+     * @param cache Cache of the encrypted values (or null)
+     * @throws Exception Encryption error
+     */
+    public void encryptStrings(String key, String functionName, CipherCache cache) throws Exception {
+        // String values to encrypt (except switch/case values, not authorized by Java compiler):
+        ArrayList<CodeString> encryptedStrings = new ArrayList<>();
+        ArrayList<String> values = new ArrayList<>();
+        for (CodeString cs : stringValues) {
+            if (cs.isCaseValue) continue;
+            encryptedStrings.add(cs);
+            values.add(JavaCode.unescapeString(cs.getValue().substring(1, cs.length() - 1)));
+        }
+
+        // All the string values encrypted together:
+        List<byte[]> encryptedValues = JavaCode.encryptValues(values, key, cache);
+        for (int i = 0; i < encryptedStrings.size(); i++) {
+            CodeString cs = encryptedStrings.get(i);
+            edits.add(cs.start, cs.end, JavaCode.getEnigmaCode(encryptedValues.get(i), functionName, compactLiterals, cacheSlots));
+        }
+    }
+
+    /**
+     * Inject fake code: fake attribute with random name and value
+     * @return False if the fake code cannot be injected (no class or no function)
+     */
+    public boolean injectFakeKeys() {
+        String fakeParamName = TextUtils.getRandomString(10, TextUtils.PARAM_CHARACTERS);
+
+        int sizeValue = Utils.getRandomNumberInRange(10, 30);
+        String randomValue = TextUtils.getRandomString(sizeValue, TextUtils.KEY_CHARACTERS);
+
+        return injectFakeKeys(fakeParamName, randomValue);
+    }
+
+    /**
+     * Inject fake code: fake attribute at the beginning of the first class, and its usage at the beginning of
+     * the first function of this class
+     * @param fakeParamName Attribute name
+     * @param randomValue Attribute value
+     * @return False if the fake code cannot be injected (no class or no function)
+     */
+    public boolean injectFakeKeys(String fakeParamName, String randomValue) {
+        if (classBodyStart < 0 || functionBodyStart < 0) return false;
+
+        String fakeAttribute = "\n\n    " + JavaCode.getFakeAttribute(fakeParamName, randomValue);
+        edits.add(classBodyStart, classBodyStart, fakeAttribute);
+        edits.add(functionBodyStart, functionBodyStart, JavaCode.getFakeCodeSource(fakeParamName));
+        return true;
+    }
+
+    /**
+     * Generate the JAVA source code (original code with the modifications)
+     * @return Source code
+     */
+    public String toCode() {
+        edits.sort();
+        return edits.apply(source, 0, source.length());
+    }
+
+    /**
+     * Write the JAVA source code (original code with the modifications), without intermediate copy
+     * @param out Output
+     * @throws IOException Output error
+     */
+    public void toCode(Appendable out) throws IOException {
+        edits.sort();
+        edits.appendTo(out, source, 0, source.length());
+    }
+
+    /**
+     * Scan the source code: string values and positions of the imports, class and function
+     */
+    private void scan() {
+        final int length = source.length();
+
+        int depth = 0;              // Curly brackets
+        int annotationParenthesis = 0;
+        boolean caseValue = false;
+        boolean defaultValue = false;
+        int defaultBrackets = 0;
+
+        // Top level statement:
+        boolean importStatement = false;
+        boolean packageStatement = false;
+        boolean classStatement = false;
+        String className = null;
+
+        // Member statement of the first class (depth 1):
+        int classDepth = -1;
+        int memberParenthesis = 0;
+        boolean memberFunction = true;
+        boolean memberHeader = false;
+        int memberNameStart = -1, memberNameEnd = -1;
+
+        int i = 0;
+        while (i < length) {
+            char c = source.charAt(i);
+            char next = (i + 1 < length) ? source.charAt(i + 1) : 0;
+
+            if (c == '/' && next == '/') {
+                i = source.indexOf('\n', i + 2);
+                if (i < 0) i = length;
+                continue;
+            }
+            if (c == '/' && next == '*') {
+                i = source.indexOf("*/", i + 2);
+                i = (i < 0) ? length : i + 2;
+                continue;
+            }
+            if (c == '"') {
+                if (next == '"' && i + 2 < length && source.charAt(i + 2) == '"') {
+                    // Text block (not encrypted):
+                    i = endOfTextBlock(i + 3);
+                    continue;
+                }
+                int end = endOfLiteral(i + 1, '"');
+                if (end > 0 && annotationParenthesis == 0 && !defaultValue) {
+                    CodeString cs = new CodeString(source, i, end);
+                    cs.isCaseValue = caseValue;
+                    stringValues.add(cs);
+                }
+                i = (end > 0) ? end : -end;
+                continue;
+            }
+            if (c == '\'') {
+                int end = endOfLiteral(i + 1, '\'');
+                i = (end > 0) ? end : -end;
+                continue;
+            }
+            if (c == '@' && !startsWithWord(i + 1, "interface")) {
+                // Annotation name, then its arguments (if any):
+                int j = i + 1;
+                while (j < length && (Character.isJavaIdentifierPart(source.charAt(j)) || source.charAt(j) == '.')) j++;
+                while (j < length && TextUtils.isEmptyChar(source.charAt(j))) j++;
+                if (j < length && source.charAt(j) == '(' && annotationParenthesis == 0) {
+                    annotationParenthesis = 1;
+                    j++;
+                }
+                i = j;
+                continue;
+            }
+            if (Character.isJavaIdentifierStart(c)) {
+                int start = i;
+                while (i < length && Character.isJavaIdentifierPart(source.charAt(i))) i++;
+                if (annotationParenthesis > 0) continue;
+
+                if (isWord(start, i, "case")) {
+                    caseValue = true;
+                } else if (isWord(start, i, "default")) {
+                    defaultValue = true;
+                } else if (depth == 0) {
+                    if (isWord(start, i, "import")) importStatement = true;
+                    else if (isWord(start, i, "package")) packageStatement = true;
+                    else if (isWord(start, i, "class") && className == null) classStatement = true;
+                    else if (classStatement && className == null) className = source.substring(start, i);
+                } else if (depth == classDepth && memberParenthesis == 0) {
+                    if (!memberHeader) {
+                        if (isWord(start, i, "new") || isWord(start, i, "class") || isWord(start, i, "interface")
+                                || isWord(start, i, "enum") || isWord(start, i, "record")) {
+                            memberFunction = false;
+                        }
+                        memberNameStart = start;
+                        memberNameEnd = i;
+                    }
+                }
+                continue;
+            }
+
+            if (annotationParenthesis > 0) {
+                if (c == '(') annotationParenthesis++;
+                else if (c == ')') annotationParenthesis--;
+                i++;
+                continue;
+            }
+
+            switch (c) {
+                case '{':
+                    if (defaultValue) defaultBrackets++;
+                    caseValue = false;
+                    if (depth == 0 && classStatement && className != null && classBodyStart < 0) {
+                        classDepth = 1;
+                        classBodyStart = i + 1;
+                    } else if (depth == classDepth && functionBodyStart < 0 && memberHeader && memberFunction
+                            && !isWord(memberNameStart, memberNameEnd, className)) {
+                        functionBodyStart = i + 1;
+                    }
+                    depth++;
+                    break;
+                case '}':
+                    if (defaultValue && --defaultBrackets <= 0) defaultValue = false;
+                    depth--;
+                    // End of the first class:
+                    if (depth == 0 && classDepth == 1) classDepth = -1;
+                    break;
+                case '(':
+                    defaultValue = false;
+                    if (depth == classDepth) {
+                        if (memberParenthesis == 0) memberHeader = true;
+                        memberParenthesis++;
+                    }
+                    break;
+                case ')':
+                    if (depth == classDepth && memberParenthesis > 0) memberParenthesis--;
+                    break;
+                case '=':
+                    if (depth == classDepth && memberParenthesis == 0) memberFunction = false;
+                    break;
+                case ';':
+                    if (depth == 0) {
+                        if (importStatement) importEnd = i + 1;
+                        if (packageStatement) packageEnd = i + 1;
+                        importStatement = packageStatement = false;
+                    }
+                    if (defaultBrackets <= 0) defaultValue = false;
+                    caseValue = false;
+                    break;
+                case ':':
+                    caseValue = false;
+                    if (defaultBrackets <= 0) defaultValue = false;
+                    break;
+                case '-':
+                    if (next == '>') {
+                        caseValue = false;
+                        if (defaultBrackets <= 0) defaultValue = false;
+                    }
+                    break;
+            }
+
+            // New member statement into the first class:
+            if ((c == ';' || c == '{' || c == '}') && depth == classDepth) {
+                memberParenthesis = 0;
+                memberFunction = true;
+                memberHeader = false;
+                memberNameStart = memberNameEnd = -1;
+            }
+            i++;
+        }
+    }
+
+    /**
+     * Return the end of a string (or char) value
+     * @param from Position after the opening quote
+     * @param quote Quote character
+     * @return Position after the closing quote, or the negative position of the end of line (not terminated)
+     */
+    private int endOfLiteral(int from, char quote) {
+        for (int i = from; i < source.length(); i++) {
+            char c = source.charAt(i);
+            if (c == '\\') i++;
+            else if (c == quote) return i + 1;
+            else if (c == '\n') return -i;
+        }
+        return -source.length();
+    }
+
+    /**
+     * Return the end of a text block
+     * @param from Position after the opening quotes
+     * @return Position after the closing quotes
+     */
+    private int endOfTextBlock(int from) {
+        for (int i = from; i < source.length(); i++) {
+            char c = source.charAt(i);
+            if (c == '\\') i++;
+            else if (c == '"' && source.startsWith("\"\"\"", i)) return i + 3;
+        }
+        return source.length();
+    }
+
+    /**
+     * Indicate if a word of the source code is equal to a value
+     * @param start Word start position
+     * @param end Word end position
+     * @param word Value to compare
+     * @return True if equal
+     */
+    private boolean isWord(int start, int end, String word) {
+        return start > -1 && end - start == word.length() && source.startsWith(word, start);
+    }
+
+    /**
+     * Indicate if the source code contains a word at a position
+     * @param position Position of the word
+     * @param word Word to search
+     * @return True if the word is at this position
+     */
+    private boolean startsWithWord(int position, String word) {
+        int end = position + word.length();
+        return source.startsWith(word, position)
+                && (end >= source.length() || !Character.isJavaIdentifierPart(source.charAt(end)));
+    }
+}
@@ -0,0 +1,87 @@
+package com.chrisney.enigma.parser;
+
+import java.util.Arrays;
+
+/**
+ * Perfect hash table of JAVA keywords: constant time lookup of a word of the source code (range of characters),
+ * without creating the word value. The hash is computed from the length, the first, the middle and the last
+ * character of the word; its parameters are searched once so that all keywords have a distinct slot.
+ * @author Christopher Ney
+ */
+class KeywordTable {
+
+    /**
+     * Keywords, by slot (null if empty)
+     */
+    private final String[] slots;
+
+    /**
+     * Keyword index (into the list of keywords) + 1, by slot
+     */
+    private final byte[] indexes;
+
+    private static final int MAX_SIZE = 1024;
+
+    private final int mask;
+    private final int firstFactor;
+    private final int lastFactor;
+
+    /**
+     * Build the perfect hash table
+     * @param keywords Keywords (127 at most)
+     */
+    KeywordTable(String[] keywords) {
+        for (int size = Integer.highestOneBit(keywords.length) << 1; size <= MAX_SIZE; size <<= 1) {
+            String[] table = new String[size];
+            for (int f = 1; f < size; f++) {
+                for (int l = 1; l < size; l++) {
+                    Arrays.fill(table, null);
+                    if (fill(table, keywords, size - 1, f, l)) {
+                        this.slots = table;
+                        this.mask = size - 1;
+                        this.firstFactor = f;
+                        this.lastFactor = l;
+                        this.indexes = new byte[size];
+                        for (int i = 0; i < keywords.length; i++)
+                            indexes[hash(keywords[i], 0, keywords[i].length())] = (byte) (i + 1);
+                        return;
+                    }
+                }
+            }
+        }
+        throw new IllegalArgumentException("No perfect hash found for the keywords");
+    }
+
+    private static boolean fill(String[] table, String[] keywords, int mask, int f, int l) {
+        for (String keyword : keywords) {
+            int h = hash(keyword, 0, keyword.length(), mask, f, l);
+            if (table[h] != null) return false;
+            table[h] = keyword;
+        }
+        return true;
+    }
+
+    private static int hash(CharSequence source, int start, int end, int mask, int f, int l) {
+        int length = end - start;
+        return (length + f * source.charAt(start) + source.charAt(start + length / 2) + l * source.charAt(end - 1)) & mask;
+    }
+
+    private int hash(CharSequence source, int start, int end) {
+        return hash(source, start, end, mask, firstFactor, lastFactor);
+    }
+
+    /**
+     * Return the index of the keyword equal to a word of the source code (case sensitive)
+     * @param source Source code
+     * @param start Word start position (included)
+     * @param end Word end position (excluded)
+     * @return Keyword index + 1, or 0 if the word isn't a keyword
+     */
+    int indexOf(String source, int start, int end) {
+        if (end <= start) return 0;
+        int h = hash(source, start, end);
+        String keyword = slots[h];
+        if (keyword == null || keyword.length() != end - start || !source.startsWith(keyword, start)) return 0;
+        return indexes[h];
+    }
+}
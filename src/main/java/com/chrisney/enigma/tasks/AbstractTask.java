@@ -1,15 +1,29 @@
 package com.chrisney.enigma.tasks;
 
-import com.chrisney.enigma.utils.Utils;
+import com.chrisney.enigma.utils.BackupManifest;
+import com.chrisney.enigma.utils.FileIndex;
+import com.chrisney.enigma.utils.TextUtils;
 import org.apache.commons.io.FileUtils;
 import org.gradle.api.DefaultTask;
+import org.gradle.api.file.Directory;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.plugins.ExtraPropertiesExtension;
+import org.gradle.api.provider.Provider;
 import org.gradle.api.tasks.Internal;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Abstract Enigma Gradle Task
@@ -18,9 +32,12 @@ import java.util.Set;
 public class AbstractTask extends DefaultTask {
 
     private static final String BACKUP_DIR = "enigma-backup";
+    private static final String ENCRYPTED_DIR = "enigma" + File.separator + "encrypted";
     private static final String SVN_FOLDER = ".svn";
     private static final String MERCURIAL_FOLDER = ".hg";
     private static final String GIT_FOLDER = ".git";
+    private static final byte[] IMPORT_BYTES = InjectCodeTask.IMPORT_NAME.getBytes(StandardCharsets.UTF_8);
+    private static final byte[] FUNCTION_BYTES = InjectCodeTask.FUNCTION_NAME.getBytes(StandardCharsets.UTF_8);
     private static final String GIT_IGNORE = "*\n" +
             "*/\n" +
             "!.gitignore";
@@ -30,17 +47,101 @@ public class AbstractTask extends DefaultTask {
     public String rootProject;
     public String pathSrc;
 
+    private FileCollection javaSourceFiles = null;
+    private final Provider<Directory> encryptedDir;
+    private final FileIndex fileIndex;
+
     public AbstractTask() {
         this.setGroup("enigma");
+        this.encryptedDir = getProject().getLayout().getBuildDirectory().dir(ENCRYPTED_DIR);
+
+        // Files index shared by the tasks of the project:
+        ExtraPropertiesExtension extra = getProject().getExtensions().getExtraProperties();
+        if (!extra.has(FileIndex.EXTRA_PROPERTY)) {
+            File buildDir = getProject().getLayout().getBuildDirectory().get().getAsFile();
+            extra.set(FileIndex.EXTRA_PROPERTY, new FileIndex(Collections.singletonList(buildDir)));
+        }
+        this.fileIndex = (FileIndex) extra.get(FileIndex.EXTRA_PROPERTY);
     }
 
     /**
-     * Return the collection of all JAVA files (*.java) found in the app source folder
+     * Return all JAVA files (*.java) found in the app source folder, without the Enigma code (sorted by path)
      * @return Collection of all JAVA files (*.java)
      */
     @Internal
     protected Collection<File> getAllJavaFiles() {
-        return Utils.listFileTree(new File(pathSrc), ".java");
+        List<File> javaFiles = new ArrayList<>();
+        for (File javaFile : fileIndex.getFiles(new File(pathSrc), ".java")) {
+            if (!isEnigmaFile(javaFile)) javaFiles.add(javaFile);
+        }
+        return javaFiles;
+    }
+
+    /**
+     * Return the JAVA files found in the app source folder, without the Enigma code (tracked by Gradle)
+     * @return JAVA files
+     */
+    protected FileCollection javaSourceFiles() {
+        if (javaSourceFiles == null) {
+            javaSourceFiles = getProject().fileTree(pathSrc, tree -> {
+                tree.include("**/*.java");
+                tree.exclude(InjectCodeTask.PACKAGE_NAME.replace(".", "/") + "/" + InjectCodeTask.CLASS_NAME + ".java");
+            });
+        }
+        return javaSourceFiles;
+    }
+
+    /**
+     * Return the path of a JAVA file relative to the app source folder
+     * @param javaFile JAVA file
+     * @return Relative path
+     */
+    protected String relativePath(File javaFile) {
+        Path root = new File(pathSrc).toPath().toAbsolutePath().normalize();
+        return root.relativize(javaFile.toPath().toAbsolutePath().normalize()).toString();
+    }
+
+    /**
+     * Return the directory of the encrypted JAVA files (into the build directory)
+     * @return Directory of the encrypted JAVA files
+     */
+    protected File encryptedDir() {
+        return encryptedDir.get().getAsFile();
+    }
+
+    /**
+     * Return the encrypted version of a JAVA file
+     * @param javaFile JAVA file of the app source folder
+     * @return Encrypted JAVA file
+     */
+    protected File encryptedFile(File javaFile) {
+        return new File(encryptedDir(), relativePath(javaFile));
+    }
+
+    /**
+     * Replace the content of a file atomically (the file is never partially written), and set its date.
+     * The file is not written if its content is already identical.
+     * @param contents New content
+     * @param target File to replace
+     * @param lastModified Date of the file (ignored if 0)
+     * @return True if the file is written
+     * @throws IOException If an I/O exception
+     */
+    protected boolean replaceFile(byte[] contents, File target, long lastModified) throws IOException {
+        boolean write = target.length() != contents.length || !Arrays.equals(Files.readAllBytes(target.toPath()), contents);
+        if (write) {
+            Path tmp = new File(target.getParentFile(), "." + target.getName() + ".enigma").toPath();
+            Files.write(tmp, contents);
+            try {
+                Files.move(tmp, target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (lastModified > 0 && target.lastModified() != lastModified) {
+            Files.setLastModifiedTime(target.toPath(), FileTime.fromMillis(lastModified));
+        }
+        return write;
     }
 
     /**
@@ -50,7 +151,7 @@ public class AbstractTask extends DefaultTask {
      */
     @Internal
     protected Collection<File> getAllXmlFiles() {
-        return Utils.listFileTree(new File(pathSrc), ".xml");
+        return fileIndex.getFiles(new File(pathSrc), ".xml");
     }
 
     /**
@@ -97,6 +198,31 @@ public class AbstractTask extends DefaultTask {
         return rootProject + File.separator + BACKUP_DIR + File.separator;
     }
 
+    /**
+     * Return the manifest file of the 'backup' directory (see BackupManifest)
+     * @return Manifest file
+     */
+    protected File backupManifestFile() {
+        return new File(backupDir(), BackupManifest.FILE_NAME);
+    }
+
+    /**
+     * Return the list of the source files replaced by their encrypted version (see ApplyEncryptionTask)
+     * @return Manifest file
+     */
+    protected File appliedManifestFile() {
+        return new File(backupDir(), BackupManifest.APPLIED_FILE_NAME);
+    }
+
+    /**
+     * Return the path of a file into the 'backup' directory (relative to the root project)
+     * @param file File of the project
+     * @return Relative path
+     */
+    protected String backupPath(File file) {
+        return file.getAbsolutePath().replace(rootProject, "");
+    }
+
     /**
      * Check if 'backup' directory exists or not
      * @return True if exists
@@ -146,7 +272,15 @@ public class AbstractTask extends DefaultTask {
      * @return True if the file contains Enigma code
      */
     protected boolean isEnigmatized(File srcFile) throws IOException {
-        String contents = FileUtils.readFileToString(srcFile, "UTF-8");
-        return contents.contains(InjectCodeTask.IMPORT_NAME) || contents.contains(InjectCodeTask.FUNCTION_NAME);
+        return isEnigmatized(Files.readAllBytes(srcFile.toPath()));
+    }
+
+    /**
+     * Check if a JAVA code contains Enigma code (search of the UTF-8 bytes, without decoding)
+     * @param contents JAVA code to test (UTF-8)
+     * @return True if the code contains Enigma code
+     */
+    protected boolean isEnigmatized(byte[] contents) {
+        return TextUtils.indexOf(contents, IMPORT_BYTES) > -1 || TextUtils.indexOf(contents, FUNCTION_BYTES) > -1;
     }
-}
\ No newline at end of file
+}
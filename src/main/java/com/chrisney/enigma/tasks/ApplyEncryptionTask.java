@@ -0,0 +1,52 @@
+package com.chrisney.enigma.tasks;
+
+import com.chrisney.enigma.utils.BackupManifest;
+import org.gradle.api.tasks.TaskAction;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Gradle Task to replace the JAVA files by their encrypted version (see EnigmaTask), before compilation.
+ * The replaced files are recorded into the backup directory: only them are restored by RestoreTask.
+ * @author Christopher Ney
+ */
+public class ApplyEncryptionTask extends AbstractTask {
+
+    @Inject
+    public ApplyEncryptionTask() {
+        super();
+    }
+
+    @TaskAction
+    public void applyEncryption() throws IOException {
+        if (!enabled) return;
+        if (!checkSCM()) return;
+
+        if (!backupDirExists()) {
+            System.out.println("⚠️ Impossible to execute 'encrypt' task if backup directory not exists!");
+            return;
+        }
+
+        // Replaced files recorded (even if interrupted) for RestoreTask:
+        File manifestFile = appliedManifestFile();
+        BackupManifest applied = BackupManifest.load(manifestFile);
+        try {
+            for (File javaFile : getAllJavaFiles()) {
+                File encryptedFile = encryptedFile(javaFile);
+                if (encryptedFile.exists()) {
+                    byte[] contents = Files.readAllBytes(encryptedFile.toPath());
+                    // Same date as the encrypted version (unchanged if the file is encrypted again):
+                    replaceFile(contents, javaFile, encryptedFile.lastModified());
+                    applied.put(backupPath(javaFile),
+                            new BackupManifest.Entry(BackupManifest.hash(contents), contents.length, javaFile.lastModified()));
+                    if (debug) System.out.println("🔐 " + relativePath(javaFile) + " encrypted");
+                }
+            }
+        } finally {
+            applied.save(manifestFile);
+        }
+    }
+}
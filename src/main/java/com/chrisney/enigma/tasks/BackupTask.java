@@ -1,14 +1,32 @@
 package com.chrisney.enigma.tasks;
 
-import org.apache.commons.io.FileUtils;
+import com.chrisney.enigma.utils.BackupManifest;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.FileType;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
 import org.gradle.api.tasks.TaskAction;
+import org.gradle.work.ChangeType;
+import org.gradle.work.FileChange;
+import org.gradle.work.Incremental;
+import org.gradle.work.InputChanges;
 
 import javax.inject.Inject;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * Gradle Task to backup original source code, before Enigma code injection.
+ * Incremental: only the changed JAVA files are copied, and the deleted ones are removed from the backup.
+ * The content hash of each backed up file is kept into a manifest (see BackupManifest): a file is copied again
+ * only if its content changed since its last backup. A file still replaced by its encrypted version (not restored,
+ * see ApplyEncryptionTask) is never backed up, even without Enigma code (fake keys only).
  * @author Christopher Ney
  */
 public class BackupTask extends AbstractTask {
@@ -16,35 +34,99 @@ public class BackupTask extends AbstractTask {
     @Inject
     public BackupTask() {
         super();
+        // Backup directory not declared as output (removed by Gradle before a non-incremental execution):
+        getOutputs().upToDateWhen(task -> backupManifestFile().exists());
+    }
+
+    @Incremental
+    @PathSensitive(PathSensitivity.RELATIVE)
+    @InputFiles
+    public FileCollection getSourceFiles() {
+        return javaSourceFiles();
     }
 
     @TaskAction
-    public void backup() throws IOException {
+    public void backup(InputChanges inputChanges) throws IOException {
         if (!enabled) return;
         if (!checkSCM()) return;
-        this.removeBackupDir();
+
+        // Backup without manifest (old version): all files backed up again
+        File manifestFile = backupManifestFile();
+        if (!manifestFile.exists()) this.removeBackupDir();
         this.createBackupDir();
-        for (File javaFile : this.getAllJavaFiles()) {
-            this.backupFile(javaFile);
+        BackupManifest manifest = BackupManifest.load(manifestFile);
+        BackupManifest applied = BackupManifest.load(appliedManifestFile());
+
+        if (!inputChanges.isIncremental()) {
+            // All files checked (only the changed ones are copied), and the backup of deleted files removed:
+            Set<String> srcFiles = new HashSet<>();
+            for (File javaFile : this.getAllJavaFiles()) {
+                srcFiles.add(backupPath(javaFile));
+                this.backupFile(javaFile, manifest, applied, true);
+            }
+            for (String srcFile : new ArrayList<>(manifest.paths())) {
+                if (!srcFiles.contains(srcFile)) this.removeBackupFile(srcFile, manifest);
+            }
+        } else {
+            for (FileChange change : inputChanges.getFileChanges(getSourceFiles())) {
+                if (change.getFileType() == FileType.DIRECTORY) continue;
+                if (change.getChangeType() == ChangeType.REMOVED) {
+                    this.removeBackupFile(backupPath(change.getFile()), manifest);
+                } else {
+                    this.backupFile(change.getFile(), manifest, applied, false);
+                }
+            }
         }
+
+        manifest.save(manifestFile);
     }
 
     /**
-     * Backup a file into the backup directory
+     * Backup a file into the backup directory, if its content changed since the last backup
      * @param file File to backup
+     * @param manifest Manifest of the backup directory
+     * @param applied Files replaced by their encrypted version (see ApplyEncryptionTask)
+     * @param checkDate True to skip the file without reading it if its size and date are unchanged
      * @throws IOException I/O Exception
      */
-    private void backupFile(File file) throws IOException {
-        String srcFile = file.getAbsolutePath().replace(rootProject, "");
+    private void backupFile(File file, BackupManifest manifest, BackupManifest applied, boolean checkDate) throws IOException {
+        String srcFile = backupPath(file);
         if (isEnigmaFile(file)) return;
 
-        if (!isEnigmatized(file) && file.length() > 0) {
-            File backup = new File(backupDir() + srcFile);
-            FileUtils.copyFile(file, backup);
+        File backup = new File(backupDir() + srcFile);
+        BackupManifest.Entry entry = manifest.get(srcFile);
+        if (entry != null && !backup.exists()) entry = null;
+        if (checkDate && entry != null && entry.isSameAs(file)) return;
+
+        long lastModified = file.lastModified();
+        byte[] contents = Files.readAllBytes(file.toPath());
+        String hash = BackupManifest.hash(contents);
+        BackupManifest.Entry appliedEntry = applied.get(srcFile);
+
+        if (entry != null && entry.hash.equals(hash)) {
+            // Same content (file touched only):
+            manifest.put(srcFile, new BackupManifest.Entry(hash, contents.length, lastModified));
+        } else if ((appliedEntry == null || !appliedEntry.hash.equals(hash)) && !isEnigmatized(contents) && contents.length > 0) {
+            Files.createDirectories(backup.getParentFile().toPath());
+            Files.copy(file.toPath(), backup.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+            manifest.put(srcFile, new BackupManifest.Entry(hash, contents.length, lastModified));
             System.out.println("\uD83D\uDCBE Backup: " + srcFile);
         } else {
             System.out.println("⚠️ Cannot backup an encrypted file: " + srcFile);
         }
     }
 
+    /**
+     * Remove the backup of a deleted file
+     * @param srcFile Path of the deleted file (see backupPath)
+     * @param manifest Manifest of the backup directory
+     * @throws IOException I/O Exception
+     */
+    private void removeBackupFile(String srcFile, BackupManifest manifest) throws IOException {
+        manifest.remove(srcFile);
+        if (Files.deleteIfExists(new File(backupDir() + srcFile).toPath())) {
+            System.out.println("\uD83D\uDDD1 Backup removed: " + srcFile);
+        }
+    }
+
 }
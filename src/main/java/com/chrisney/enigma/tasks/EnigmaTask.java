@@ -1,20 +1,52 @@
 package com.chrisney.enigma.tasks;
 
-import com.chrisney.enigma.parser.JavaCode;
-import com.chrisney.enigma.parser.JavaParser;
+import com.chrisney.enigma.parser.JavaStrings;
 import com.chrisney.enigma.utils.AESUtils;
+import com.chrisney.enigma.utils.CipherCache;
+import com.chrisney.enigma.utils.ClassNameMatcher;
 import com.chrisney.enigma.utils.TextUtils;
 import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.FileType;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
 import org.gradle.api.tasks.TaskAction;
+import org.gradle.work.ChangeType;
+import org.gradle.work.FileChange;
+import org.gradle.work.Incremental;
+import org.gradle.work.InputChanges;
 import org.apache.commons.io.FileUtils;
 
 import javax.inject.Inject;
 import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Gradle Task to parse JAVA source code and encrypt string values.
+ * Incremental: the encrypted files are kept into the build directory, and only the changed JAVA files are encrypted
+ * again (all the files if the hash changes). The encrypted files are copied into the sources by ApplyEncryptionTask,
+ * or compiled directly from the output directory (out-of-place mode, with the Enigma code and the ignored files).
  * @author Christopher Ney
  */
+@CacheableTask
 public class EnigmaTask extends AbstractTask {
 
     public String hash;
@@ -23,16 +55,94 @@ public class EnigmaTask extends AbstractTask {
     public String customFunction = null;
     public DefaultTask customEncryptionTask = null;
     public boolean injectFakeKeys = true;
+    public int parallelism = 0;
+    public boolean compactLiterals = false;
+    public int stringCacheSize = 0;
+    public boolean stringCacheWeak = false;
+    public File outputDir = null;
+
+    private ClassNameMatcher classesMatcher = null;
+    private ClassNameMatcher ignoredClassesMatcher = null;
+    private CipherCache cipherCache = null;
+
+    // Summary of the task:
+    private final AtomicInteger encryptedCount = new AtomicInteger();
+    private final AtomicInteger skippedCount = new AtomicInteger();
+    private final AtomicInteger ignoredCount = new AtomicInteger();
 
     @Inject
     public EnigmaTask() {
         super();
     }
 
+    @Optional
+    @Input
+    public String getHash() {
+        return hash;
+    }
+
+    @Optional
+    @Input
+    public List<String> getIgnoredClassNames() {
+        return (ignoredClasses != null) ? Arrays.asList(ignoredClasses) : null;
+    }
+
+    @Optional
+    @Input
+    public List<String> getClassNames() {
+        return (classes != null) ? Arrays.asList(classes) : null;
+    }
+
+    @Optional
+    @Input
+    public String getCustomFunction() {
+        return customFunction;
+    }
+
+    @Input
+    public boolean isInjectFakeKeys() {
+        return injectFakeKeys;
+    }
+
+    @Input
+    public boolean isCompactLiterals() {
+        return compactLiterals;
+    }
+
+    @Input
+    public int getStringCacheSize() {
+        return stringCacheSize;
+    }
+
+    @Input
+    public boolean isStringCacheWeak() {
+        return stringCacheWeak;
+    }
+
+    @Incremental
+    @PathSensitive(PathSensitivity.RELATIVE)
+    @InputFiles
+    public FileCollection getSourceFiles() {
+        return javaSourceFiles();
+    }
+
+    @OutputDirectory
+    public File getEncryptedDir() {
+        return encryptedDir();
+    }
+
+    /**
+     * Return the directory of the encrypted JAVA files: the output directory in out-of-place mode
+     * @return Directory of the encrypted JAVA files
+     */
+    @Override
+    protected File encryptedDir() {
+        return (outputDir != null) ? outputDir : super.encryptedDir();
+    }
+
     @TaskAction
-    public void encrypt() throws Exception {
+    public void encrypt(InputChanges inputChanges) throws Exception {
         if (!enabled) return;
-        if (!checkSCM()) return;
 
         if (TextUtils.isEmpty(this.hash) && this.customEncryptionTask == null) {
             System.out.println("⚠️ Missing Hash value to encrypt files (or Custom Encryption Task)");
@@ -42,68 +152,184 @@ public class EnigmaTask extends AbstractTask {
             return;
         }
 
-        if (!backupDirExists()) {
-            System.out.println("⚠️ Impossible to execute 'encrypt' task if backup directory not exists!");
-            return;
+        // Class name patterns compiled once:
+        classesMatcher = (classes != null) ? new ClassNameMatcher(classes) : null;
+        ignoredClassesMatcher = (ignoredClasses != null) ? new ClassNameMatcher(ignoredClasses) : null;
+
+        // Encrypt all files again (hash or options changed, no history...):
+        if (!inputChanges.isIncremental()) FileUtils.cleanDirectory(encryptedDir());
+
+        // Out-of-place mode: Enigma code compiled with the encrypted files
+        if (outputDir != null && TextUtils.isEmpty(customFunction) && !TextUtils.isEmpty(hash)) {
+            File codeFile = new File(outputDir, InjectCodeTask.PACKAGE_NAME.replace(".", File.separator)
+                    + File.separator + InjectCodeTask.CLASS_NAME + ".java");
+            FileUtils.writeStringToFile(codeFile, InjectCodeTask.getSourceCode(hash, stringCacheSize, stringCacheWeak), "UTF-8");
         }
 
-        for (File javaFile : this.getAllJavaFiles()) {
-            if (!isSelected(javaFile) || isIgnored(javaFile)) {
-                System.out.println("\uD83D\uDEAB️ " + javaFile.getName() + " ignored");
+        // Encrypted values of the previous builds:
+        File cacheFile = cipherCacheFile();
+        cipherCache = !TextUtils.isEmpty(hash) ? CipherCache.load(cacheFile, hash, CipherCache.MAX_ENTRIES) : null;
+
+        // Changed files only, sorted by path (deterministic output):
+        List<File> javaFiles = new ArrayList<>();
+        for (FileChange change : inputChanges.getFileChanges(getSourceFiles())) {
+            if (change.getFileType() == FileType.DIRECTORY) continue;
+            if (change.getChangeType() == ChangeType.REMOVED) {
+                Files.deleteIfExists(encryptedFile(change.getFile()).toPath());
             } else {
-                encryptJavaFile(javaFile);
+                javaFiles.add(change.getFile());
             }
         }
-    }
+        if (javaFiles.isEmpty()) return;
+        javaFiles.sort(Comparator.comparing(File::getAbsolutePath));
+        encryptedCount.set(0);
+        skippedCount.set(0);
+        ignoredCount.set(0);
 
-    private boolean isSelected(File javaFile) {
-        if (this.classes != null) {
-            for (String ignored : this.classes) {
-                String path = ignored.replace(".", File.separator)
-                        .replace( File.separator + "java", ".java");
-                if (javaFile.getAbsolutePath().endsWith(path)) {
-                    return true;
+        int threads = (parallelism > 0) ? parallelism : Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, javaFiles.size())));
+        try {
+            // Each file is encrypted independently:
+            List<Future<String>> results = new ArrayList<>(javaFiles.size());
+            for (File javaFile : javaFiles) {
+                results.add(executor.submit(() -> processJavaFile(javaFile)));
+            }
+
+            // Console output and failure in the order of the files:
+            GradleException failure = null;
+            for (int i = 0; i < javaFiles.size(); i++) {
+                try {
+                    String message = results.get(i).get();
+                    if (message != null) System.out.println(message);
+                } catch (ExecutionException e) {
+                    System.out.println("⚠️ " + javaFiles.get(i).getName() + " not encrypted: " + e.getCause());
+                    if (failure == null) failure = new GradleException("Encryption failed: " + javaFiles.get(i), e.getCause());
                 }
             }
-            return false;
+            if (failure != null) throw failure;
+        } finally {
+            executor.shutdownNow();
         }
-        return true;
-    }
 
-    private boolean isIgnored(File javaFile) {
-        if (this.ignoredClasses != null) {
-            for (String ignored : this.ignoredClasses) {
-                String path = ignored.replace(".", File.separator)
-                        .replace( File.separator + "java", ".java");
-                if (javaFile.getAbsolutePath().endsWith(path)) {
-                    return true;
-                }
+        System.out.println("\uD83D\uDD10 " + encryptedCount.get() + " file(s) encrypted, "
+                + skippedCount.get() + " without string value, " + ignoredCount.get() + " ignored");
+
+        if (cipherCache != null) {
+            cipherCache.save(cacheFile);
+            int total = cipherCache.getHits() + cipherCache.getMisses();
+            if (total > 0) {
+                System.out.println("\uD83D\uDDC3 Cipher cache: " + cipherCache.getHits() + "/" + total + " string values ("
+                        + (100 * cipherCache.getHits() / total) + "%), " + cipherCache.size() + " entries");
             }
         }
-        return false;
     }
 
-    private void encryptJavaFile(File srcFile) throws Exception {
+    /**
+     * Return the cache file of the encrypted values (into the build directory, one file by task)
+     * @return Cache file
+     */
+    private File cipherCacheFile() {
+        return new File(super.encryptedDir().getParentFile(), "cache" + File.separator + getName() + ".bin");
+    }
 
-        if (isEnigmaFile(srcFile)) return;
-        if (isEnigmatized(srcFile)) {
-            System.out.println("⚠️ Cannot process a file already encrypted: " + srcFile);
-            return;
+    /**
+     * Encrypt a JAVA file if selected
+     * @param javaFile JAVA file
+     * @return Console message of the file (or null)
+     * @throws Exception Encryption error
+     */
+    private String processJavaFile(File javaFile) throws Exception {
+        if (!isSelected(javaFile) || isIgnored(javaFile)) {
+            if (outputDir != null) FileUtils.copyFile(javaFile, encryptedFile(javaFile));
+            else Files.deleteIfExists(encryptedFile(javaFile).toPath());
+            ignoredCount.incrementAndGet();
+            return "\uD83D\uDEAB️ " + javaFile.getName() + " ignored";
+        } else {
+            return encryptJavaFile(javaFile);
         }
+    }
 
-        String contents = FileUtils.readFileToString(srcFile, "UTF-8");
+    private boolean isSelected(File javaFile) {
+        return classesMatcher == null || classesMatcher.matches(className(javaFile));
+    }
 
-        JavaParser p = new JavaParser();
-        JavaCode code = p.parse(contents);
+    private boolean isIgnored(File javaFile) {
+        return ignoredClassesMatcher != null && ignoredClassesMatcher.matches(className(javaFile));
+    }
+
+    /**
+     * Return the full class name of a JAVA file of the app source folder
+     * @param javaFile JAVA file
+     * @return Class name (e.g. "com.foo.Bar")
+     */
+    private String className(File javaFile) {
+        return ClassNameMatcher.toClassName(relativePath(javaFile));
+    }
 
-        code.addImport(InjectCodeTask.PACKAGE_NAME + "." + InjectCodeTask.CLASS_NAME);
-        code.encryptStrings(hash, InjectCodeTask.FUNCTION_NAME);
+    private String encryptJavaFile(File srcFile) throws Exception {
 
-        if (injectFakeKeys) code.injectFakeKeys();
+        if (isEnigmaFile(srcFile)) return null;
 
-        String contentSecured = code.toCode();
-        FileUtils.writeStringToFile(srcFile, contentSecured, "UTF-8");
+        // Single read of the file:
+        byte[] bytes = Files.readAllBytes(srcFile.toPath());
+        if (isEnigmatized(bytes)) {
+            if (outputDir != null) FileUtils.writeByteArrayToFile(encryptedFile(srcFile), bytes);
+            return "⚠️ Cannot process a file already encrypted: " + srcFile;
+        }
+
+        // No quote, no string value: not parsed
+        if (TextUtils.indexOf(bytes, (byte) '"') < 0) return skipJavaFile(srcFile, bytes, null);
+
+        String contents = new String(bytes, StandardCharsets.UTF_8);
+
+        // Fast path: string values only (without code blocks tree):
+        JavaStrings strings = new JavaStrings(contents);
+        if (!strings.hasStringsToEncrypt()) return skipJavaFile(srcFile, bytes, strings);
+        strings.addImport(InjectCodeTask.PACKAGE_NAME + "." + InjectCodeTask.CLASS_NAME);
+        strings.compactLiterals = compactLiterals;
+        strings.cacheSlots = stringCacheSize > 0;
+        strings.encryptStrings(hash, InjectCodeTask.FUNCTION_NAME, cipherCache);
+
+        // Fake keys only if the class structure is found (otherwise the file is encrypted without fake keys):
+        if (injectFakeKeys) strings.injectFakeKeys();
+
+        // Write the secured code directly into the encrypted file (without copy in memory):
+        File encryptedFile = encryptedFile(srcFile);
+        Files.createDirectories(encryptedFile.getParentFile().toPath());
+        try (Writer writer = Files.newBufferedWriter(encryptedFile.toPath(), StandardCharsets.UTF_8)) {
+            strings.toCode(writer);
+        }
+
+        encryptedCount.incrementAndGet();
+        return "\uD83D\uDD10 " + srcFile.getName() + " encrypted";
+    }
+
+    /**
+     * Process a JAVA file without string value: nothing to encrypt, only the fake keys are injected (if the class
+     * structure is found), otherwise the original file is kept
+     * @param srcFile JAVA file
+     * @param bytes Content of the file
+     * @param strings Scan of the file (or null if not scanned)
+     * @return Console message of the file (or null)
+     * @throws IOException If an I/O exception
+     */
+    private String skipJavaFile(File srcFile, byte[] bytes, JavaStrings strings) throws IOException {
+        skippedCount.incrementAndGet();
+        File encryptedFile = encryptedFile(srcFile);
+
+        if (injectFakeKeys) {
+            if (strings == null) strings = new JavaStrings(new String(bytes, StandardCharsets.UTF_8));
+            if (strings.injectFakeKeys()) {
+                Files.createDirectories(encryptedFile.getParentFile().toPath());
+                try (Writer writer = Files.newBufferedWriter(encryptedFile.toPath(), StandardCharsets.UTF_8)) {
+                    strings.toCode(writer);
+                }
+                return debug ? "⏭ " + srcFile.getName() + " without string value (fake keys only)" : null;
+            }
+        }
 
-        System.out.println("\uD83D\uDD10 " + srcFile.getName() + " encrypted");
+        if (outputDir != null) FileUtils.writeByteArrayToFile(encryptedFile, bytes);
+        else Files.deleteIfExists(encryptedFile.toPath());
+        return debug ? "⏭ " + srcFile.getName() + " without string value" : null;
     }
 }
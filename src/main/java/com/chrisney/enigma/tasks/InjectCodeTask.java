@@ -2,6 +2,9 @@ package com.chrisney.enigma.tasks;
 
 import com.chrisney.enigma.utils.TextUtils;
 import org.apache.commons.io.FileUtils;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputFile;
 import org.gradle.api.tasks.TaskAction;
 
 import javax.inject.Inject;
@@ -10,6 +13,10 @@ import java.io.IOException;
 
 /**
  * Gradle Task to inject Enigma source code.
+ * The injected class derives the key once and keeps an initialized Cipher by thread (no provider lookup and no key
+ * setup by string value), the string values are decoded in UTF-8 (same charset as AESUtils).
+ * The decrypted values can be kept into a bounded cache (see stringCacheSize): one entry by slot, the slot of each
+ * string value is given at build time (see JavaCode.getEnigmaCode), and a value replaces the previous value of its slot.
  * @author Christopher Ney
  */
 public class InjectCodeTask extends AbstractTask {
@@ -21,31 +28,84 @@ public class InjectCodeTask extends AbstractTask {
 
     public static final String SOURCE_CODE = "package " + PACKAGE_NAME + ";\n" +
             "\n" +
+            "import java.lang.ref.WeakReference;\n" +
+            "import java.nio.charset.Charset;\n" +
+            "import java.util.Arrays;\n" +
             "import javax.crypto.Cipher;\n" +
-            "import javax.crypto.SecretKey;\n" +
             "import javax.crypto.spec.SecretKeySpec;\n" +
             "import javax.crypto.spec.IvParameterSpec;\n" +
             "\n" +
             "public class " + CLASS_NAME + " {\n" +
             "   private final static int[] data = {0, 0};\n" +
+            "   private final static Charset UTF_8 = Charset.forName(\"UTF-8\");\n" +
+            "   private final static SecretKeySpec KEY = new SecretKeySpec(keyToBytes(data), \"AES\");\n" +
+            "   private final static ThreadLocal<Cipher> CIPHER = new ThreadLocal<Cipher>() {\n" +
+            "        @Override\n" +
+            "        protected Cipher initialValue() {\n" +
+            "            try {\n" +
+            "                Cipher cipher = Cipher.getInstance(\"AES/CBC/PKCS5Padding\");\n" +
+            "                byte[] iv = new byte[cipher.getBlockSize()];\n" +
+            "                cipher.init(Cipher.DECRYPT_MODE, KEY, new IvParameterSpec(iv));\n" +
+            "                return cipher;\n" +
+            "            } catch (Exception e) {\n" +
+            "                e.printStackTrace();\n" +
+            "            }\n" +
+            "            return null;\n" +
+            "        }\n" +
+            "    };\n" +
+            "   private final static int CACHE_SIZE = 0;\n" +
+            "   private final static boolean WEAK_VALUES = false;\n" +
+            "   private final static Entry[] CACHE = new Entry[CACHE_SIZE];\n" +
             "   public static String enigmatization(byte[] enc) {\n" +
             "        try {\n" +
-            "            byte[] keyValue  = keyToBytes(data);\n" +
-            "            byte[] result = decrypt(keyValue, enc);\n" +
-            "            return new String(result);\n" +
+            "            byte[] result = CIPHER.get().doFinal(enc);\n" +
+            "            return new String(result, UTF_8);\n" +
             "        } catch (Exception e) {\n" +
+            "            CIPHER.remove();\n" +
             "            e.printStackTrace();\n" +
             "        }\n" +
             "        return null;\n" +
             "    }\n" +
-            "    private static byte[] decrypt(byte[] keyValue, byte[] encrypted)\n" +
-            "            throws Exception {\n" +
-            "        SecretKey skeySpec = new SecretKeySpec(keyValue, \"AES\");\n" +
-            "        Cipher cipher = Cipher.getInstance(\"AES/CBC/PKCS5Padding\");\n" +
-            "        byte[] iv = new byte[cipher.getBlockSize()];\n" +
-            "        IvParameterSpec ivParams = new IvParameterSpec(iv);\n" +
-            "        cipher.init(Cipher.DECRYPT_MODE, skeySpec, ivParams);\n" +
-            "        return cipher.doFinal(encrypted);\n" +
+            "    public static String enigmatization(String enc) {\n" +
+            "        byte[] bytes = new byte[enc.length()];\n" +
+            "        for (int i = 0; i < bytes.length; i++) {\n" +
+            "            bytes[i] = (byte) enc.charAt(i);\n" +
+            "        }\n" +
+            "        return enigmatization(bytes);\n" +
+            "    }\n" +
+            "    public static String enigmatization(byte[] enc, int slot) {\n" +
+            "        Entry entry = (CACHE_SIZE > 0) ? CACHE[slot % CACHE.length] : null;\n" +
+            "        if (entry != null && entry.slot == slot && entry.enc instanceof byte[] && Arrays.equals((byte[]) entry.enc, enc)) {\n" +
+            "            String value = entry.get();\n" +
+            "            if (value != null) return value;\n" +
+            "        }\n" +
+            "        return cache(slot, enc, enigmatization(enc));\n" +
+            "    }\n" +
+            "    public static String enigmatization(String enc, int slot) {\n" +
+            "        Entry entry = (CACHE_SIZE > 0) ? CACHE[slot % CACHE.length] : null;\n" +
+            "        if (entry != null && entry.slot == slot && enc.equals(entry.enc)) {\n" +
+            "            String value = entry.get();\n" +
+            "            if (value != null) return value;\n" +
+            "        }\n" +
+            "        return cache(slot, enc, enigmatization(enc));\n" +
+            "    }\n" +
+            "    private static String cache(int slot, Object enc, String value) {\n" +
+            "        // Lock-free: immutable entry (final fields), at worst a value is decrypted twice\n" +
+            "        if (CACHE_SIZE > 0 && value != null) CACHE[slot % CACHE.length] = new Entry(slot, enc, value);\n" +
+            "        return value;\n" +
+            "    }\n" +
+            "    private final static class Entry {\n" +
+            "        final int slot;\n" +
+            "        final Object enc;\n" +
+            "        final Object value;\n" +
+            "        Entry(int slot, Object enc, String value) {\n" +
+            "            this.slot = slot;\n" +
+            "            this.enc = enc;\n" +
+            "            this.value = WEAK_VALUES ? new WeakReference<String>(value) : value;\n" +
+            "        }\n" +
+            "        String get() {\n" +
+            "            return (String) ((value instanceof WeakReference) ? ((WeakReference<?>) value).get() : value);\n" +
+            "        }\n" +
             "    }\n" +
             "    private static byte[] keyToBytes(int[] key) {\n" +
             "        int size = 16 * (key.length / 16);\n" +
@@ -53,18 +113,48 @@ public class InjectCodeTask extends AbstractTask {
             "        for (int i = 0; i < size; i++) {\n" +
             "            builder.append((char) key[i]);\n" +
             "        }\n" +
-            "        return builder.toString().getBytes();\n" +
+            "        return builder.toString().getBytes(UTF_8);\n" +
             "    }\n" +
             "}\n";
 
     public String hash;
     public String customFunction = null;
+    public int stringCacheSize = 0;
+    public boolean stringCacheWeak = false;
 
     @Inject
     public InjectCodeTask() {
         super();
     }
 
+    @Optional
+    @Input
+    public String getHash() {
+        return hash;
+    }
+
+    @Optional
+    @Input
+    public String getCustomFunction() {
+        return customFunction;
+    }
+
+    @Input
+    public int getStringCacheSize() {
+        return stringCacheSize;
+    }
+
+    @Input
+    public boolean isStringCacheWeak() {
+        return stringCacheWeak;
+    }
+
+    @OutputFile
+    public File getCodeFile() {
+        return new File(pathSrc + File.separator + PACKAGE_NAME.replace(".",  File.separator)
+                + File.separator + CLASS_NAME + ".java");
+    }
+
     @TaskAction
     public void addCode() throws IOException {
         if (!enabled) return;
@@ -80,17 +170,39 @@ public class InjectCodeTask extends AbstractTask {
         if (!packageName.exists()) packageName.mkdir();
 
         File codeFile = new File(packageName.getAbsolutePath() + File.separator + CLASS_NAME + ".java");
-        String data = encodeHash(SOURCE_CODE);
+        String data = getSourceCode(this.hash, stringCacheSize, stringCacheWeak);
         FileUtils.writeStringToFile(codeFile, data, "UTF-8");
 
         System.out.println("✏️ Add Enigma code");
     }
 
-    private String encodeHash(String source) {
+    /**
+     * Return the source code of the Enigma class, with the encoded hash
+     * @param hash Secret key
+     * @return Source code of the Enigma class
+     */
+    public static String getSourceCode(String hash) {
+        return getSourceCode(hash, 0, false);
+    }
+
+    /**
+     * Return the source code of the Enigma class, with the encoded hash and the cache of the decrypted values
+     * @param hash Secret key
+     * @param cacheSize Number of decrypted values kept (0: no cache)
+     * @param weakValues True if the decrypted values are only weakly referenced (released by the garbage collector)
+     * @return Source code of the Enigma class
+     */
+    public static String getSourceCode(String hash, int cacheSize, boolean weakValues) {
+        return encodeHash(SOURCE_CODE, hash)
+                .replace("CACHE_SIZE = 0;", "CACHE_SIZE = " + Math.max(0, cacheSize) + ";")
+                .replace("WEAK_VALUES = false;", "WEAK_VALUES = " + weakValues + ";");
+    }
+
+    private static String encodeHash(String source, String hash) {
         StringBuilder builder = new StringBuilder();
         builder.append("{");
-        for (int i = 0; i < this.hash.length(); i++) {
-            char c = this.hash.charAt(i);
+        for (int i = 0; i < hash.length(); i++) {
+            char c = hash.charAt(i);
             builder.append((int)c);
             if (i < hash.length() - 1) builder.append(", ");
         }
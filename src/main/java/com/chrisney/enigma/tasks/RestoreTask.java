@@ -1,14 +1,25 @@
 package com.chrisney.enigma.tasks;
 
+import com.chrisney.enigma.utils.BackupManifest;
 import org.apache.commons.io.FileUtils;
+import org.gradle.api.GradleException;
 import org.gradle.api.tasks.TaskAction;
 
 import javax.inject.Inject;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Gradle Task to restore original JAVA files after compilation.
+ * Only the files replaced by their encrypted version (see ApplyEncryptionTask) are restored, in parallel,
+ * the other files are not read. The original date of the files is restored, and identical files are not written.
  * @author Christopher Ney
  */
 public class RestoreTask extends AbstractTask {
@@ -24,36 +35,95 @@ public class RestoreTask extends AbstractTask {
         if (!checkSCM()) return;
 
         if (backupDirExists()) {
-            for (File javaFile : this.getAllJavaFiles()) {
-                this.restoreFile(javaFile);
-            }
+            restoreFiles();
         } else {
             System.out.println("⚠️ There is no backup to restore!");
         }
         removeEnigmaCode();
     }
 
+    /**
+     * Restore the files replaced by their encrypted version, then update the list of replaced files
+     * (only the files not restored are kept)
+     * @throws IOException If an I/O exception
+     */
+    private void restoreFiles() throws IOException {
+        File manifestFile = appliedManifestFile();
+        BackupManifest applied = BackupManifest.load(manifestFile);
+        BackupManifest backups = BackupManifest.load(backupManifestFile());
+        List<String> srcFiles = new ArrayList<>(applied.paths());
+        if (srcFiles.isEmpty()) {
+            Files.deleteIfExists(manifestFile.toPath());
+            return;
+        }
+
+        int threads = Math.min(srcFiles.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>(srcFiles.size());
+            for (String srcFile : srcFiles) {
+                BackupManifest.Entry entry = applied.get(srcFile);
+                BackupManifest.Entry backup = backups.get(srcFile);
+                long lastModified = (backup != null) ? backup.lastModified : 0;
+                results.add(executor.submit(() -> restoreFile(srcFile, entry, lastModified)));
+            }
+
+            // Failure in the order of the files:
+            GradleException failure = null;
+            for (int i = 0; i < srcFiles.size(); i++) {
+                try {
+                    if (results.get(i).get()) applied.remove(srcFiles.get(i));
+                } catch (ExecutionException e) {
+                    System.out.println("⚠️ " + srcFiles.get(i) + " not restored: " + e.getCause());
+                    if (failure == null) failure = new GradleException("Restore failed: " + srcFiles.get(i), e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new GradleException("Restore interrupted", e);
+                }
+            }
+
+            if (applied.paths().isEmpty()) Files.deleteIfExists(manifestFile.toPath());
+            else applied.save(manifestFile);
+            if (failure != null) throw failure;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     private void removeEnigmaCode() throws IOException {
         File codePackage = new File(pathSrc + File.separator + InjectCodeTask.PACKAGE_NAME.replace(".", File.separator));
         FileUtils.deleteDirectory(codePackage);
         System.out.println("\uD83E\uDDF9 Remove Enigma code: " + codePackage.getAbsolutePath());
     }
 
-    private void restoreFile(File file) throws IOException {
+    /**
+     * Restore a file replaced by its encrypted version
+     * @param srcFile Path of the file (see backupPath)
+     * @param applied Encrypted version of the file
+     * @param lastModified Original date of the file (or 0 if unknown: date of the backup)
+     * @return True if the file is restored (or deleted since)
+     * @throws IOException If an I/O exception
+     */
+    private boolean restoreFile(String srcFile, BackupManifest.Entry applied, long lastModified) throws IOException {
+        File file = new File(rootProject + srcFile);
+        if (!file.exists()) return true;
 
-        String srcFile = file.getAbsolutePath().replace(rootProject, "");
-        if (isEnigmaFile(file)) return;
+        // Modified since its encryption (only read in this case):
+        if (!applied.isSameAs(file) && !isEnigmatized(file)) {
+            System.out.println("⚠️ Cannot overwrite an unencrypted file: " + srcFile);
+            return true;
+        }
 
-        if (isEnigmatized(file)) {
-            File backup = new File(backupDir() + srcFile);
-            if (backup.exists() && backup.length() > 0) {
-                FileUtils.copyFile(backup, file);
+        File backup = new File(backupDir() + srcFile);
+        if (backup.exists() && backup.length() > 0) {
+            // Original content and date (unchanged for the incremental compilation):
+            if (replaceFile(Files.readAllBytes(backup.toPath()), file, (lastModified > 0) ? lastModified : backup.lastModified())) {
                 System.out.println("♻️ Restore: " + srcFile);
-            } else {
-                System.out.println("⚠️ There is no backup for: " + srcFile);
             }
+            return true;
         } else {
-            System.out.println("⚠️ Cannot overwrite an unencrypted file: " + srcFile);
+            System.out.println("⚠️ There is no backup for: " + srcFile);
+            return false;
         }
     }
 
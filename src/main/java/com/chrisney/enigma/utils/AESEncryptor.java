@@ -0,0 +1,74 @@
+package com.chrisney.enigma.utils;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reusable AES encryptor of a secret key (same algorithm as AESUtils): the key is built once, and each thread
+ * keeps its own initialized Cipher (no provider lookup by value).
+ * @author Christopher Ney
+ */
+public class AESEncryptor {
+
+    private static final String TRANSFORMATION = "AES/CBC/PKCS5Padding";
+
+    private final String key;
+    private final SecretKeySpec keySpec;
+    private final IvParameterSpec ivParams;
+    private final ThreadLocal<Cipher> cipher;
+
+    /**
+     * Constructor
+     * @param key Secret key
+     */
+    public AESEncryptor(String key) {
+        this.key = key;
+        this.keySpec = new SecretKeySpec(AESUtils.keyToBytes(key), "AES");
+        this.ivParams = new IvParameterSpec(new byte[16]);
+        this.cipher = ThreadLocal.withInitial(() -> {
+            try {
+                Cipher c = Cipher.getInstance(TRANSFORMATION);
+                c.init(Cipher.ENCRYPT_MODE, keySpec, ivParams);
+                return c;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    /**
+     * Return the secret key
+     * @return Secret key
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Encrypt a value
+     * @param clear Value to encrypt
+     * @return Encrypted value
+     * @throws GeneralSecurityException Encryption error
+     */
+    public byte[] encrypt(byte[] clear) throws GeneralSecurityException {
+        // The Cipher is reset to its initial state (same key and IV) by doFinal:
+        return cipher.get().doFinal(clear);
+    }
+
+    /**
+     * Encrypt all values (e.g. all string values of a JAVA file)
+     * @param values Values to encrypt
+     * @return Encrypted values (same order)
+     * @throws GeneralSecurityException Encryption error
+     */
+    public List<byte[]> encryptAll(List<byte[]> values) throws GeneralSecurityException {
+        Cipher c = cipher.get();
+        List<byte[]> result = new ArrayList<>(values.size());
+        for (byte[] value : values) result.add(c.doFinal(value));
+        return result;
+    }
+}
@@ -4,6 +4,8 @@ import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 
 /**
  * AES Encryption utils.
@@ -12,18 +14,60 @@ public class AESUtils {
 
     public static final int MIN_KEY_SIZE = 16;
 
+    /**
+     * Charset of the keys and string values (same as the Enigma code, see InjectCodeTask)
+     */
+    public static final Charset CHARSET = StandardCharsets.UTF_8;
+
+    /**
+     * Encryptor of the last key used
+     */
+    private static volatile AESEncryptor encryptor = null;
+
+    /**
+     * Return a reusable encryptor of a key (the same instance while the key is unchanged)
+     * @param key Secret key
+     * @return Encryptor
+     */
+    public static AESEncryptor encryptor(String key) {
+        AESEncryptor e = encryptor;
+        if (e == null || !e.getKey().equals(key)) {
+            e = new AESEncryptor(key);
+            encryptor = e;
+        }
+        return e;
+    }
+
     public static byte[] keyToBytes(String key) {
         int size = MIN_KEY_SIZE * (key.length() / MIN_KEY_SIZE);
         String k = key.substring(0, size);
-        return k.getBytes();
+        return k.getBytes(CHARSET);
+    }
+
+    /**
+     * Return the bytes of a string value to encrypt
+     * @param cleartext String value
+     * @return Bytes
+     */
+    public static byte[] toBytes(String cleartext) {
+        return cleartext.getBytes(CHARSET);
     }
 
     public static String encrypt(String key, String cleartext)
             throws Exception {
-        byte[] keyValue  = keyToBytes(key);
-        byte[] rawKey = getRawKey(keyValue);
-        byte[] result = encrypt(rawKey, cleartext.getBytes());
-        return toHex(result);
+        return toHex(encryptBytes(key, cleartext));
+    }
+
+    /**
+     * Encrypt a string value, without hexadecimal conversion
+     * @param key Secret key
+     * @param cleartext String value
+     * @return Encrypted bytes
+     * @throws Exception Encryption error
+     */
+    public static byte[] encryptBytes(String key, String cleartext)
+            throws Exception {
+        return encryptor(key).encrypt(toBytes(cleartext));
     }
 
     public static String decrypt(String key, String encrypted)
@@ -31,21 +75,7 @@ public class AESUtils {
         byte[] keyValue  = keyToBytes(key);
         byte[] enc = toByte(encrypted);
         byte[] result = decrypt(keyValue, enc);
-        return new String(result);
-    }
-
-    private static byte[] getRawKey(byte[] keyValue) throws Exception {
-        SecretKey key = new SecretKeySpec(keyValue, "AES");
-        return key.getEncoded();
-    }
-
-    private static byte[] encrypt(byte[] raw, byte[] clear) throws Exception {
-        SecretKey skeySpec = new SecretKeySpec(raw, "AES");
-        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
-        byte[] iv = new byte[cipher.getBlockSize()];
-        IvParameterSpec ivParams = new IvParameterSpec(iv);
-        cipher.init(Cipher.ENCRYPT_MODE, skeySpec, ivParams);
-        return cipher.doFinal(clear);
+        return new String(result, CHARSET);
     }
 
     private static byte[] decrypt(byte[] keyValue, byte[] encrypted)
@@ -62,24 +92,21 @@ public class AESUtils {
         int len = hexString.length() / 2;
         byte[] result = new byte[len];
         for (int i = 0; i < len; i++)
-            result[i] = Integer.valueOf(hexString.substring(2 * i, 2 * i + 2),
-                    16).byteValue();
+            result[i] = (byte) ((Character.digit(hexString.charAt(2 * i), 16) << 4)
+                    | Character.digit(hexString.charAt(2 * i + 1), 16));
         return result;
     }
 
     public static String toHex(byte[] buf) {
         if (buf == null)
             return "";
-        StringBuffer result = new StringBuffer(2 * buf.length);
+        char[] result = new char[2 * buf.length];
         for (int i = 0; i < buf.length; i++) {
-            appendHex(result, buf[i]);
+            result[2 * i] = HEX[(buf[i] >> 4) & 0x0f];
+            result[2 * i + 1] = HEX[buf[i] & 0x0f];
         }
-        return result.toString();
+        return new String(result);
     }
 
-    private final static String HEX = "0123456789ABCDEF";
-
-    private static void appendHex(StringBuffer sb, byte b) {
-        sb.append(HEX.charAt((b >> 4) & 0x0f)).append(HEX.charAt(b & 0x0f));
-    }
+    private final static char[] HEX = "0123456789ABCDEF".toCharArray();
 }
@@ -0,0 +1,154 @@
+package com.chrisney.enigma.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Manifest of the backup directory: content hash, size and last modification date of each backed up file.
+ * One line per file (sorted by path): hash, size, date and path separated by tabulations.
+ * Also used for the list of the source files replaced by their encrypted version (see APPLIED_FILE_NAME).
+ * @author Christopher Ney
+ */
+public class BackupManifest {
+
+    public static final String FILE_NAME = ".manifest";
+    public static final String APPLIED_FILE_NAME = ".applied";
+    private static final String HEADER = "# Enigma backup manifest: hash, size, lastModified, path";
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    /**
+     * Entries by path
+     */
+    private final TreeMap<String, Entry> entries = new TreeMap<>();
+
+    /**
+     * Read the manifest of a backup directory (empty if not exists)
+     * @param file Manifest file
+     * @return Manifest
+     * @throws IOException If an I/O exception
+     */
+    public static BackupManifest load(File file) throws IOException {
+        BackupManifest manifest = new BackupManifest();
+        if (!file.exists()) return manifest;
+
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] values = line.split("\t", 4);
+                if (values.length < 4) continue;
+                try {
+                    manifest.put(values[3], new Entry(values[0], Long.parseLong(values[1]), Long.parseLong(values[2])));
+                } catch (NumberFormatException e) {
+                    // Corrupted line: the file will be backed up again
+                }
+            }
+        }
+        return manifest;
+    }
+
+    /**
+     * Write the manifest (replace the existing file only once fully written)
+     * @param file Manifest file
+     * @throws IOException If an I/O exception
+     */
+    public void save(File file) throws IOException {
+        Path tmp = new File(file.getAbsolutePath() + ".tmp").toPath();
+        try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.write('\n');
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                Entry entry = e.getValue();
+                writer.write(entry.hash + "\t" + entry.size + "\t" + entry.lastModified + "\t" + e.getKey() + "\n");
+            }
+        }
+        Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Return the entry of a file
+     * @param path Path of the file
+     * @return Entry, or null if the file is not backed up
+     */
+    public Entry get(String path) {
+        return entries.get(path);
+    }
+
+    /**
+     * Add (or replace) the entry of a file
+     * @param path Path of the file
+     * @param entry Entry
+     */
+    public void put(String path, Entry entry) {
+        entries.put(path, entry);
+    }
+
+    /**
+     * Remove the entry of a file
+     * @param path Path of the file
+     * @return Removed entry, or null
+     */
+    public Entry remove(String path) {
+        return entries.remove(path);
+    }
+
+    /**
+     * Return the paths of all backed up files (sorted)
+     * @return Paths
+     */
+    public Set<String> paths() {
+        return entries.keySet();
+    }
+
+    /**
+     * Return the content hash of a file contents (SHA-256, hexadecimal)
+     * @param contents File contents
+     * @return Hash
+     */
+    public static String hash(byte[] contents) {
+        return AESUtils.toHex(newDigest().digest(contents));
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Backed up file: content hash, size and last modification date of the original file
+     */
+    public static class Entry {
+        public final String hash;
+        public final long size;
+        public final long lastModified;
+
+        public Entry(String hash, long size, long lastModified) {
+            this.hash = hash;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * Indicate if a file is unchanged since its backup, without reading it (same size and date)
+         * @param file File
+         * @return True if same size and date
+         */
+        public boolean isSameAs(File file) {
+            return file.length() == size && file.lastModified() == lastModified;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.chrisney.enigma.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Persistent cache of the encrypted string values (AES with a fixed IV: same value and key, same encrypted value).
+ * The entries are the encrypted bytes by hash of the string value (the string values are not stored), the least
+ * recently used entries are removed above the maximum size, and all entries are removed if the key changes.
+ * Thread safe.
+ * @author Christopher Ney
+ */
+public class CipherCache {
+
+    public static final int MAX_ENTRIES = 100000;
+    private static final int VERSION = 2;
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    private final AESEncryptor encryptor;
+    private final String keyFingerprint;
+    private final LinkedHashMap<String, byte[]> entries;
+
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    /**
+     * Constructor: empty cache
+     * @param key Secret key
+     * @param maxEntries Maximum number of entries
+     */
+    public CipherCache(String key, int maxEntries) {
+        this.encryptor = AESUtils.encryptor(key);
+        this.keyFingerprint = hash(key);
+        this.entries = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Read a cache file (empty cache if not exists, unreadable or created with another key)
+     * @param file Cache file
+     * @param key Secret key
+     * @param maxEntries Maximum number of entries
+     * @return Cache
+     */
+    public static CipherCache load(File file, String key, int maxEntries) {
+        CipherCache cache = new CipherCache(key, maxEntries);
+        if (!file.exists()) return cache;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            if (in.readInt() != VERSION || !cache.keyFingerprint.equals(in.readUTF())) return cache;
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                String hash = in.readUTF();
+                byte[] encrypted = new byte[in.readUnsignedShort()];
+                in.readFully(encrypted);
+                cache.entries.put(hash, encrypted);
+            }
+        } catch (IOException e) {
+            cache.entries.clear();
+        }
+        return cache;
+    }
+
+    /**
+     * Write the cache file (least recently used entries first, replace the existing file only once fully written)
+     * @param file Cache file
+     * @throws IOException If an I/O exception
+     */
+    public synchronized void save(File file) throws IOException {
+        Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+        Path tmp = new File(file.getAbsolutePath() + ".tmp").toPath();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(VERSION);
+            out.writeUTF(keyFingerprint);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeShort(entry.getValue().length);
+                out.write(entry.getValue());
+            }
+        }
+        Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Encrypt a string value, or return its encrypted value from the cache
+     * @param value String value
+     * @return Encrypted bytes
+     * @throws Exception Encryption error
+     */
+    public byte[] encrypt(String value) throws Exception {
+        return encryptAll(Collections.singletonList(value)).get(0);
+    }
+
+    /**
+     * Encrypt string values (e.g. all string values of a JAVA file): the values not found in the cache are
+     * encrypted all together
+     * @param values String values
+     * @return Encrypted bytes (same order)
+     * @throws Exception Encryption error
+     */
+    public List<byte[]> encryptAll(List<String> values) throws Exception {
+        List<String> hashes = new ArrayList<>(values.size());
+        for (String value : values) hashes.add(hash(value));
+
+        List<byte[]> result = new ArrayList<>(values.size());
+        List<Integer> missing = new ArrayList<>();
+        synchronized (this) {
+            for (String hash : hashes) {
+                byte[] encrypted = entries.get(hash);
+                if (encrypted == null) missing.add(result.size());
+                result.add(encrypted);
+            }
+        }
+        hits.addAndGet(values.size() - missing.size());
+        if (missing.isEmpty()) return result;
+
+        misses.addAndGet(missing.size());
+        List<byte[]> clear = new ArrayList<>(missing.size());
+        for (int i : missing) clear.add(AESUtils.toBytes(values.get(i)));
+        List<byte[]> encrypted = encryptor.encryptAll(clear);
+        synchronized (this) {
+            for (int j = 0; j < missing.size(); j++) {
+                int i = missing.get(j);
+                result.set(i, encrypted.get(j));
+                // Too long for the cache file (not cached):
+                if (encrypted.get(j).length <= 0xFFFF) entries.put(hashes.get(i), encrypted.get(j));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return the number of encrypted values found in the cache
+     * @return Number of hits
+     */
+    public int getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Return the number of encrypted values not found in the cache
+     * @return Number of misses
+     */
+    public int getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Return the number of entries
+     * @return Number of entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Return the hash of a string value (SHA-256, hexadecimal)
+     * @param value String value
+     * @return Hash
+     */
+    private static String hash(String value) {
+        return AESUtils.toHex(DIGEST.get().digest(value.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,111 @@
+package com.chrisney.enigma.utils;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Compiled list of class name patterns (see enigma.classes and enigma.ignoredClasses options):
+ * - class name: "com.foo.Bar" or "com.foo.Bar.java" (also matched by the end of the name: "Bar", "foo.Bar")
+ * - classes of a package: "com.foo.*"
+ * - classes of a package and its sub-packages: "com.foo.**"
+ * A class name is checked by a few hash lookups, whatever the number of patterns.
+ * @author Christopher Ney
+ */
+public class ClassNameMatcher {
+
+    private static final String JAVA_EXTENSION = ".java";
+
+    /**
+     * Class names
+     */
+    private final Set<String> classNames = new HashSet<>();
+
+    /**
+     * Number of segments of the class names (e.g. 3 for "com.foo.Bar")
+     */
+    private final Set<Integer> classNameSizes = new HashSet<>();
+
+    /**
+     * Packages ("com.foo.*")
+     */
+    private final Set<String> packages = new HashSet<>();
+
+    /**
+     * Packages with sub-packages ("com.foo.**")
+     */
+    private final Set<String> packageTrees = new HashSet<>();
+
+    /**
+     * Constructor: compile the patterns
+     * @param patterns Class name patterns
+     */
+    public ClassNameMatcher(String[] patterns) {
+        for (String pattern : patterns) {
+            String p = pattern.trim();
+            if (p.endsWith(".**")) {
+                packageTrees.add(p.substring(0, p.length() - 3));
+            } else if (p.endsWith(".*")) {
+                packages.add(p.substring(0, p.length() - 2));
+            } else if (!p.isEmpty()) {
+                if (p.endsWith(JAVA_EXTENSION)) p = p.substring(0, p.length() - JAVA_EXTENSION.length());
+                classNames.add(p);
+                classNameSizes.add(segments(p));
+            }
+        }
+    }
+
+    /**
+     * Indicate if a class name matches one of the patterns
+     * @param className Full class name (e.g. "com.foo.Bar")
+     * @return True if matches
+     */
+    public boolean matches(String className) {
+        // Class name, or end of the class name (only the ends with the size of a pattern are compared):
+        int size = segments(className);
+        int start = 0;
+        while (true) {
+            if (classNameSizes.contains(size) && classNames.contains(start == 0 ? className : className.substring(start))) {
+                return true;
+            }
+            int dot = className.indexOf('.', start);
+            if (dot < 0) break;
+            start = dot + 1;
+            size--;
+        }
+
+        // Package, and parent packages:
+        int end = className.lastIndexOf('.');
+        if (end < 0) return false;
+        if (!packages.isEmpty() && packages.contains(className.substring(0, end))) return true;
+        if (packageTrees.isEmpty()) return false;
+        for (; end > 0; end = className.lastIndexOf('.', end - 1)) {
+            if (packageTrees.contains(className.substring(0, end))) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Return the full class name of a JAVA file
+     * @param relativePath Path of the JAVA file, relative to the source folder (e.g. "com/foo/Bar.java")
+     * @return Class name (e.g. "com.foo.Bar")
+     */
+    public static String toClassName(String relativePath) {
+        String path = relativePath.endsWith(JAVA_EXTENSION)
+                ? relativePath.substring(0, relativePath.length() - JAVA_EXTENSION.length()) : relativePath;
+        return path.replace(File.separatorChar, '.').replace('/', '.');
+    }
+
+    /**
+     * Return the number of segments of a name
+     * @param name Name (e.g. "com.foo.Bar")
+     * @return Number of segments (e.g. 3)
+     */
+    private static int segments(String name) {
+        int count = 1;
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) == '.') count++;
+        }
+        return count;
+    }
+}
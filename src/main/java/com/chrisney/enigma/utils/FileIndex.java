@@ -0,0 +1,65 @@
+package com.chrisney.enigma.utils;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of the files of a project (sorted by path), shared by the Enigma tasks during a build:
+ * each directory tree is walked only once. The hidden directories (.git, .gradle...), the backup directory
+ * and the excluded directories (build directory) are not walked.
+ * @author Christopher Ney
+ */
+public class FileIndex {
+
+    public static final String EXTRA_PROPERTY = "enigmaFileIndex";
+    private static final String BACKUP_DIR = "enigma-backup";
+
+    /**
+     * Directories not walked
+     */
+    private final Set<Path> excludedDirs = new HashSet<>();
+
+    /**
+     * Files by directory and file type
+     */
+    private final ConcurrentHashMap<String, List<File>> files = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor
+     * @param excludedDirs Directories not walked (build directory...)
+     */
+    public FileIndex(Collection<File> excludedDirs) {
+        for (File dir : excludedDirs) {
+            this.excludedDirs.add(dir.toPath().toAbsolutePath().normalize());
+        }
+    }
+
+    /**
+     * Return all files of a directory tree (sorted by path, walked only at the first call)
+     * @param dir Root directory
+     * @param fileType Filter of file type (extension)
+     * @return Files found (not modifiable)
+     */
+    public List<File> getFiles(File dir, String fileType) {
+        String key = dir.getAbsolutePath() + File.pathSeparator + fileType;
+        return files.computeIfAbsent(key,
+                k -> Collections.unmodifiableList(Utils.listFileTree(dir, fileType, this::isExcluded)));
+    }
+
+    /**
+     * Indicate if a directory must not be walked
+     * @param dir Directory
+     * @return True if hidden, backup or excluded directory
+     */
+    private boolean isExcluded(Path dir) {
+        String name = dir.getFileName().toString();
+        return name.startsWith(".") || name.equals(BACKUP_DIR)
+                || excludedDirs.contains(dir.toAbsolutePath().normalize());
+    }
+}
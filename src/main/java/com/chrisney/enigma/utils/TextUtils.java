@@ -1,5 +1,7 @@
 package com.chrisney.enigma.utils;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Random;
 
 /**
@@ -17,6 +19,25 @@ public class TextUtils {
      */
     public static final String PARAM_CHARACTERS ="ABCDEFGHIJKLMNOPQRSTUVWXYZ_";
 
+    /**
+     * Table of empty characters: 'space', 'carrier return', 'tabulation'
+     */
+    private static final boolean[] EMPTY_CHARS = toCharactersTable(new char[] {' ', '\r', '\n', '\t'});
+
+    /**
+     * Table of return characters
+     */
+    private static final boolean[] RETURN_CHARS = toCharactersTable(new char[] {'\r', '\n', System.lineSeparator().charAt(0)});
+
+    /**
+     * Single character strings (ASCII), to avoid allocation
+     */
+    private static final String[] ASCII_STRINGS = new String[128];
+
+    static {
+        for (char c = 0; c < ASCII_STRINGS.length; c++) ASCII_STRINGS[c] = String.valueOf(c);
+    }
+
     /**
      * Check if a string ends with a specific character
      * @param value String to test
@@ -58,8 +79,8 @@ public class TextUtils {
      * @param c Character to test
      * @return True if character is equals to 'space' or 'carrier return', or 'tabulation'
      */
-    public static boolean isEmptyChar(Character c) {
-        return  c.equals(' ') || c.equals('\r') || c.equals('\n') || c.equals('\t');
+    public static boolean isEmptyChar(char c) {
+        return inCharactersTable(EMPTY_CHARS, c);
     }
 
     /**
@@ -75,6 +96,38 @@ public class TextUtils {
         return false;
     }
 
+    /**
+     * Convert a characters list to a lookup table (indexed by character)
+     * @param list Characters list
+     * @return Lookup table
+     */
+    public static boolean[] toCharactersTable(char[] list) {
+        int size = 0;
+        for (char c : list) size = Math.max(size, c + 1);
+        boolean[] table = new boolean[size];
+        for (char c : list) table[c] = true;
+        return table;
+    }
+
+    /**
+     * Check if Character is containing by the characters lookup table
+     * @param table Lookup table (see toCharactersTable)
+     * @param character Searched character
+     * @return True if the character is contained by the table
+     */
+    public static boolean inCharactersTable(boolean[] table, char character) {
+        return character < table.length && table[character];
+    }
+
+    /**
+     * Return the String value of a character, without allocation for ASCII characters
+     * @param c Character
+     * @return String value of the character
+     */
+    public static String valueOf(char c) {
+        return (c < ASCII_STRINGS.length) ? ASCII_STRINGS[c] : String.valueOf(c);
+    }
+
     /**
      * Check if the string is a space value
      * @param s String to check
@@ -89,8 +142,8 @@ public class TextUtils {
      * @param c Character to test
      * @return True if the character is a Return Character
      */
-    public static boolean isReturnChar(Character c) {
-        return c.equals('\r') || c.equals('\n') || c.equals(System.lineSeparator().charAt(0));
+    public static boolean isReturnChar(char c) {
+        return inCharactersTable(RETURN_CHARS, c);
     }
 
     /**
@@ -119,4 +172,44 @@ public class TextUtils {
             return null;
         }
     }
+
+    /**
+     * Return the index of a byte sequence into a byte array (e.g. an ASCII word into an UTF-8 text, without decoding)
+     * @param data Bytes to search into
+     * @param pattern Bytes to search
+     * @return Index of the first occurrence, or -1
+     */
+    public static int indexOf(byte[] data, byte[] pattern) {
+        if (pattern.length == 0) return 0;
+        byte first = pattern[0];
+        int limit = data.length - pattern.length;
+        for (int i = 0; i <= limit; i++) {
+            if (data[i] != first) continue;
+            int j = 1;
+            while (j < pattern.length && data[i + j] == pattern[j]) j++;
+            if (j == pattern.length) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Return the index of a byte into a byte array, 8 bytes at a time (e.g. an ASCII character into an UTF-8 text)
+     * @param data Bytes to search into
+     * @param value Byte to search
+     * @return Index of the first occurrence, or -1
+     */
+    public static int indexOf(byte[] data, byte value) {
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        long pattern = (value & 0xFFL) * 0x0101010101010101L;
+        int i = 0;
+        for (; i + 8 <= data.length; i += 8) {
+            // Zero byte of (word ^ pattern) = searched byte:
+            long word = buffer.getLong(i) ^ pattern;
+            if (((word - 0x0101010101010101L) & ~word & 0x8080808080808080L) != 0) break;
+        }
+        for (; i < data.length; i++) {
+            if (data[i] == value) return i;
+        }
+        return -1;
+    }
 }
@@ -3,9 +3,17 @@ package com.chrisney.enigma.utils;
 import com.chrisney.enigma.parser.JavaCode;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.function.Predicate;
 
 import static org.gradle.internal.impldep.com.google.common.io.Resources.getResource;
 
@@ -15,26 +23,52 @@ import static org.gradle.internal.impldep.com.google.common.io.Resources.getReso
 public class Utils {
 
     /**
-     * Recursive algorithm to list all files in directory
+     * List all files of a directory tree (sorted by path)
      * @param dir Root directory to scan
      * @param fileType Filter of file type to search (extension)
      * @return All files found
      */
-    public static Collection<File> listFileTree(File dir, String fileType) {
-        Set<File> fileTree = new HashSet<>();
-        if(dir == null || dir.listFiles() == null) {
+    public static List<File> listFileTree(File dir, String fileType) {
+        return listFileTree(dir, fileType, path -> false);
+    }
+
+    /**
+     * List all files of a directory tree (sorted by path), without walking the excluded directories
+     * @param dir Root directory to scan (never excluded)
+     * @param fileType Filter of file type to search (extension)
+     * @param excludedDir Filter of the directories to skip
+     * @return All files found
+     */
+    public static List<File> listFileTree(File dir, String fileType, Predicate<Path> excludedDir) {
+        List<File> fileTree = new ArrayList<>();
+        if (dir == null || !dir.isDirectory()) {
             return fileTree;
         }
-        File[] files = dir.listFiles();
-        if (files != null) {
-            for (File entry : files) {
-                if (entry.isFile() && entry.getName().endsWith(fileType)) {
-                    fileTree.add(entry);
-                } else {
-                    fileTree.addAll(listFileTree(entry, fileType));
+        Path root = dir.toPath();
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path path, BasicFileAttributes attrs) {
+                    return (!path.equals(root) && excludedDir.test(path)) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
                 }
-            }
+
+                @Override
+                public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile() && path.getFileName().toString().endsWith(fileType)) {
+                        fileTree.add(path.toFile());
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path path, IOException e) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
+        Collections.sort(fileTree);
         return fileTree;
     }
 
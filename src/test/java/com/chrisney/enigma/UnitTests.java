@@ -3,20 +3,47 @@ package com.chrisney.enigma;
 import com.chrisney.enigma.parser.CodeBlock;
 import com.chrisney.enigma.parser.CodeString;
 import com.chrisney.enigma.parser.JavaCode;
+import com.chrisney.enigma.parser.JavaLexer;
 import com.chrisney.enigma.parser.JavaParser;
+import com.chrisney.enigma.parser.JavaStrings;
+import com.chrisney.enigma.tasks.AbstractTask;
+import com.chrisney.enigma.tasks.ApplyEncryptionTask;
+import com.chrisney.enigma.tasks.BackupTask;
+import com.chrisney.enigma.tasks.EnigmaTask;
 import com.chrisney.enigma.tasks.InjectCodeTask;
+import com.chrisney.enigma.tasks.RestoreTask;
+import com.chrisney.enigma.utils.AESEncryptor;
 import com.chrisney.enigma.utils.AESUtils;
+import com.chrisney.enigma.utils.BackupManifest;
+import com.chrisney.enigma.utils.CipherCache;
+import com.chrisney.enigma.utils.ClassNameMatcher;
+import com.chrisney.enigma.utils.FileIndex;
 import com.chrisney.enigma.utils.TextUtils;
 import com.chrisney.enigma.utils.Utils;
 import org.apache.commons.io.FileUtils;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.gradle.api.Project;
+import org.gradle.api.file.FileType;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.gradle.work.ChangeType;
+import org.gradle.work.FileChange;
+import org.gradle.work.InputChanges;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 public class UnitTests {
 
@@ -37,6 +64,35 @@ public class UnitTests {
 
             Assert.assertEquals(value, decrypted);
         }
+
+        // UTF-8 whatever the platform charset (same as the Enigma code):
+        String value = "\u00E9\u20AC\u6F22";
+        Assert.assertArrayEquals(AESUtils.encryptor(key).encrypt(value.getBytes(StandardCharsets.UTF_8)), AESUtils.encryptBytes(key, value));
+        Assert.assertEquals(value, AESUtils.decrypt(key, AESUtils.encrypt(key, value)));
+    }
+
+    @Test
+    public void testEncryptor() throws Exception {
+        String key = Utils.randomHashKey();
+        AESEncryptor encryptor = AESUtils.encryptor(key);
+        Assert.assertSame(encryptor, AESUtils.encryptor(key));
+
+        List<byte[]> values = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            values.add(TextUtils.getRandomString(Utils.getRandomNumberInRange(0, 50), TextUtils.KEY_CHARACTERS).getBytes());
+        }
+        List<byte[]> encrypted = encryptor.encryptAll(values);
+        for (int i = 0; i < values.size(); i++) {
+            String value = new String(values.get(i));
+            Assert.assertEquals(AESUtils.encrypt(key, value), AESUtils.toHex(encrypted.get(i)));
+            Assert.assertEquals(value, AESUtils.decrypt(key, AESUtils.toHex(encrypted.get(i))));
+            Assert.assertArrayEquals(encrypted.get(i), AESUtils.encryptBytes(key, value));
+        }
+
+        byte[] all = new byte[256];
+        for (int i = 0; i < all.length; i++) all[i] = (byte) i;
+        Assert.assertEquals("007F80FF", AESUtils.toHex(new byte[]{0, 127, -128, -1}));
+        Assert.assertArrayEquals(all, AESUtils.toByte(AESUtils.toHex(all)));
     }
 
     @Test
@@ -73,6 +129,146 @@ public class UnitTests {
         Assert.assertEquals(blockImport.name, "com.chrisney.enigma.parser.JavaParser");
     }
 
+    @Test
+    public void testKeywordsParser() {
+        String code = "public final class Void {\n" +
+                "    private Void() {}\n" +
+                "    public static String Final(int value) { return null; }\n" +
+                "}";
+        JavaParser javaParser = new JavaParser();
+        JavaCode javaCode = javaParser.parse(code);
+
+        // Keywords are case sensitive:
+        CodeBlock classBlock = javaCode.getClasses().get(0);
+        Assert.assertEquals("Void", classBlock.name);
+        Assert.assertEquals(CodeBlock.BlockType.Constructor, classBlock.subBlocks.get(0).type);
+
+        CodeBlock function = javaCode.getFunctions().get(0);
+        Assert.assertEquals("Final", function.name);
+        Assert.assertEquals("String", function.returnType);
+
+        for (CodeString word : classBlock.words) {
+            if (word.is("class")) Assert.assertTrue(word.isInstruction);
+            if (word.is("Void")) Assert.assertFalse(word.isInstruction);
+            if (word.is("String")) Assert.assertTrue(word.isType);
+        }
+    }
+
+    @Test
+    public void testNestedBlocksParser() throws Exception {
+        String code = "package com.example;\n" +
+                "\n" +
+                "public class Outer {\n" +
+                "    class Inner {\n" +
+                "        void run() {\n" +
+                "            post(() -> {\n" +
+                "                new Listener() {\n" +
+                "                    public void onEvent() { log(\"event\"); }\n" +
+                "                };\n" +
+                "            });\n" +
+                "        }\n" +
+                "    }\n" +
+                "}";
+        JavaParser javaParser = new JavaParser();
+        JavaCode javaCode = javaParser.parse(code);
+
+        Assert.assertEquals(code + "\n", javaCode.toCode());
+
+        StringWriter writer = new StringWriter();
+        javaCode.toCode(writer);
+        Assert.assertEquals(code + "\n", writer.toString());
+
+        ArrayList<CodeBlock> classes = javaCode.getClasses();
+        Assert.assertEquals(2, classes.size());
+        Assert.assertEquals("Outer", classes.get(0).name);
+        Assert.assertEquals("Inner", classes.get(1).name);
+        Assert.assertEquals("run", javaCode.getFunctions().get(0).name);
+
+        CodeString value = javaCode.getStringValues().get(0);
+        Assert.assertEquals("\"event\"", value.getValue());
+        Assert.assertEquals(code.indexOf("\"event\""), value.start);
+
+        CodeBlock valueBlock = javaCode.getBlockBetween(value.start, value.end);
+        Assert.assertEquals(" log(\"event\");", valueBlock.getCode());
+        Assert.assertNull(javaCode.getBlockBetween(code.indexOf("class Inner"), code.indexOf("class Inner") + 5));
+
+        for (CodeBlock block : javaCode.getAllBlocks()) {
+            Assert.assertEquals(block.getCode(), code.substring(block.getStart(), block.getEnd()));
+        }
+    }
+
+    @Test
+    public void testStringsFastPath() throws Exception {
+        String code = "package com.example;\n" +
+                "\n" +
+                "import java.util.List;\n" +
+                "\n" +
+                "@Deprecated\n" +
+                "public class Example {\n" +
+                "    @SuppressWarnings(\"unchecked\")\n" +
+                "    public String value(String x) {\n" +
+                "        char quote = '\"'; // \"comment\"\n" +
+                "        switch (x) {\n" +
+                "            case \"label\": return \"esc\\\"aped\";\n" +
+                "        }\n" +
+                "        return \"end\";\n" +
+                "    }\n" +
+                "}\n";
+
+        JavaStrings strings = new JavaStrings(code);
+        ArrayList<CodeString> values = strings.getStringValues();
+        Assert.assertEquals(3, values.size());
+        Assert.assertEquals("\"label\"", values.get(0).getValue());
+        Assert.assertTrue(values.get(0).isCaseValue);
+        Assert.assertEquals("\"esc\\\"aped\"", values.get(1).getValue());
+        Assert.assertEquals("\"end\"", values.get(2).getValue());
+        Assert.assertTrue(strings.hasStringsToEncrypt());
+        Assert.assertFalse(new JavaStrings("/* \"License\" */ @Deprecated(since = \"1\") interface A {}").hasStringsToEncrypt());
+
+        strings.addImport(InjectCodeTask.PACKAGE_NAME + "." + InjectCodeTask.CLASS_NAME);
+        strings.encryptStrings("LXeyH4qdtk2YqNDnLqZzX5HmPEwEwZEN", InjectCodeTask.FUNCTION_NAME);
+        Assert.assertTrue(strings.injectFakeKeys("DMNGZONJKU", "moyvMeX1ESB3Q"));
+        String securedCode = strings.toCode();
+
+        Assert.assertTrue(securedCode.contains("import java.util.List;\n" + InjectCodeTask.IMPORT_NAME));
+        Assert.assertTrue(securedCode.contains("public class Example {\n\n    public static final String DMNGZONJKU"));
+        Assert.assertTrue(securedCode.contains("value(String x) {\n        if (DMNGZONJKU.isEmpty())"));
+        Assert.assertTrue(securedCode.contains("@SuppressWarnings(\"unchecked\")"));
+        Assert.assertTrue(securedCode.contains("case \"label\":"));
+        Assert.assertFalse(securedCode.contains("\"end\""));
+    }
+
+    @Test
+    public void testLexerAllocationPerKB() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return;
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        if (!threadBean.isThreadAllocatedMemorySupported()) return;
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        // Source code with lot of blank lines, indentation and none ASCII comments:
+        StringBuilder sb = new StringBuilder("package com.example;\n\npublic class Example {\n");
+        for (int n = 0; sb.length() < 256 * 1024; n++) {
+            sb.append("\n    /* Commentaire déjà traduit à la ligne */\n\n")
+                    .append("    public String value").append(n).append("(int v) {\n\n")
+                    .append("        if (v > 0) { return \"value ").append(n).append("\"; }\n")
+                    .append("        return null;\n    }\n\n");
+        }
+        String code = sb.append("}\n").toString();
+
+        // Warm up:
+        for (int i = 0; i < 10; i++) new JavaLexer(code);
+
+        long threadId = Thread.currentThread().getId();
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        JavaLexer lexer = new JavaLexer(code);
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        Assert.assertTrue(lexer.size() > 0);
+        long bytesPerKB = allocated * 1024 / code.length();
+        Assert.assertTrue("Lexer allocates " + bytesPerKB + " bytes per KB", bytesPerKB < 16 * 1024);
+    }
+
     @Test
     public void testInsertArray() {
 
@@ -152,6 +348,268 @@ public class UnitTests {
         }
     }
 
+    @Test
+    public void testCompactLiterals() throws Exception {
+        String key = Utils.randomHashKey();
+        List<String> values = new ArrayList<>();
+        StringBuilder code = new StringBuilder("package com.example;\n\npublic class Example {\n");
+        for (int i = 0; i < 200; i++) {
+            values.add(TextUtils.getRandomString(Utils.getRandomNumberInRange(0, 40), TextUtils.KEY_CHARACTERS));
+            code.append("    String v").append(i).append(" = \"").append(values.get(i)).append("\";\n");
+        }
+        code.append("}\n");
+
+        JavaStrings strings = new JavaStrings(code.toString());
+        strings.compactLiterals = true;
+        strings.encryptStrings(key, InjectCodeTask.FUNCTION_NAME);
+        String securedCode = strings.toCode();
+        Assert.assertFalse(securedCode.contains("new byte[]"));
+
+        // Unpack the string literals (as the Enigma code) and decrypt them:
+        String call = InjectCodeTask.FUNCTION_NAME + "(\"";
+        int pos = 0;
+        for (String value : values) {
+            pos = securedCode.indexOf(call, pos) + call.length();
+            Assert.assertTrue(pos >= call.length());
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            for (char c = securedCode.charAt(pos); c != '"'; c = securedCode.charAt(++pos)) {
+                Assert.assertTrue(c >= 0x20 && c < 0x7F);
+                if (c == '\\') {
+                    char next = securedCode.charAt(++pos);
+                    if (next == '"' || next == '\\') {
+                        c = next;
+                    } else {
+                        c = (char) Integer.parseInt(securedCode.substring(pos, pos + 3), 8);
+                        pos += 2;
+                    }
+                }
+                bytes.write(c);
+            }
+            Assert.assertEquals(value, AESUtils.decrypt(key, AESUtils.toHex(bytes.toByteArray())));
+        }
+    }
+
+    @Test
+    public void testStringCacheSlots() throws Exception {
+        String key = Utils.randomHashKey();
+        String code = "package com.example;\n\npublic class Example {\n" +
+                "    String a = \"Hello\";\n    String b = \"World\";\n    String c = \"Hello\";\n}\n";
+
+        JavaStrings strings = new JavaStrings(code);
+        strings.cacheSlots = true;
+        strings.encryptStrings(key, InjectCodeTask.FUNCTION_NAME);
+        String securedCode = strings.toCode();
+
+        // Same value, same slot:
+        int hello = Arrays.hashCode(AESUtils.encryptBytes(key, "Hello")) & 0x7FFFFFFF;
+        int world = Arrays.hashCode(AESUtils.encryptBytes(key, "World")) & 0x7FFFFFFF;
+        Assert.assertEquals(2, securedCode.split(", " + hello + "\\);", -1).length - 1);
+        Assert.assertEquals(1, securedCode.split(", " + world + "\\);", -1).length - 1);
+
+        String source = InjectCodeTask.getSourceCode(key, 64, true);
+        Assert.assertTrue(source.contains("CACHE_SIZE = 64;"));
+        Assert.assertTrue(source.contains("WEAK_VALUES = true;"));
+        Assert.assertTrue(InjectCodeTask.getSourceCode(key).contains("CACHE_SIZE = 0;"));
+    }
+
+    @Test
+    public void testMissedRestore() throws Exception {
+        File root = Files.createTempDirectory("enigma-project").toFile();
+        try {
+            Assert.assertTrue(new File(root, ".git").mkdirs());
+            File src = new File(root, "app/src/main/java/p");
+            Assert.assertTrue(src.mkdirs());
+            // Without string value (fake keys only), and with a string value:
+            String nCode = "package p;\n\npublic class N {\n    public int value() {\n        return 1;\n    }\n}\n";
+            String aCode = "package p;\n\npublic class A {\n    public String value() {\n        return \"Hello\";\n    }\n}\n";
+            File n = new File(src, "N.java");
+            File a = new File(src, "A.java");
+            FileUtils.writeStringToFile(n, nCode, "UTF-8");
+            FileUtils.writeStringToFile(a, aCode, "UTF-8");
+
+            Project project = ProjectBuilder.builder().withProjectDir(root).build();
+            BackupTask backup = project.getTasks().register("backup", BackupTask.class).get();
+            EnigmaTask encrypt = project.getTasks().register("encrypt", EnigmaTask.class).get();
+            ApplyEncryptionTask apply = project.getTasks().register("applyEncryption", ApplyEncryptionTask.class).get();
+            RestoreTask restore = project.getTasks().register("restore", RestoreTask.class).get();
+            for (AbstractTask task : Arrays.asList(backup, encrypt, apply, restore)) {
+                task.rootProject = root.getAbsolutePath();
+                task.pathSrc = src.getParentFile().getAbsolutePath();
+            }
+            encrypt.hash = Utils.randomHashKey();
+            Assert.assertTrue(encrypt.getEncryptedDir().mkdirs()); // Created by Gradle before the task
+
+            // First build not restored (e.g. compilation error), then a second build:
+            for (int i = 0; i < 2; i++) {
+                backup.backup(allFilesChanged(Arrays.asList(a, n)));
+                encrypt.encrypt(allFilesChanged(Arrays.asList(a, n)));
+                apply.applyEncryption();
+                Assert.assertNotEquals(nCode, FileUtils.readFileToString(n, "UTF-8"));
+                Assert.assertNotEquals(aCode, FileUtils.readFileToString(a, "UTF-8"));
+            }
+            restore.restore();
+            Assert.assertEquals(nCode, FileUtils.readFileToString(n, "UTF-8"));
+            Assert.assertEquals(aCode, FileUtils.readFileToString(a, "UTF-8"));
+        } finally {
+            FileUtils.deleteDirectory(root);
+        }
+    }
+
+    @Test
+    public void testEncryptWithoutFakeKeysAnchor() throws Exception {
+        File root = Files.createTempDirectory("enigma-project").toFile();
+        try {
+            File src = new File(root, "app/src/main/java/p");
+            Assert.assertTrue(src.mkdirs());
+            // No class structure found by the fast path (enum), with arrow case labels:
+            File e = new File(src, "E.java");
+            FileUtils.writeStringToFile(e, "package p;\n\npublic enum E {\n    A, B;\n    " +
+                    "static int of(String s) {\n        return switch (s) { case \"a\" -> 1; default -> \"b\".length(); };\n    }\n}\n", "UTF-8");
+
+            Project project = ProjectBuilder.builder().withProjectDir(root).build();
+            EnigmaTask encrypt = project.getTasks().register("encrypt", EnigmaTask.class).get();
+            encrypt.rootProject = root.getAbsolutePath();
+            encrypt.pathSrc = src.getParentFile().getAbsolutePath();
+            encrypt.hash = Utils.randomHashKey();
+            Assert.assertTrue(encrypt.getEncryptedDir().mkdirs()); // Created by Gradle before the task
+            encrypt.encrypt(allFilesChanged(Collections.singletonList(e)));
+
+            String securedCode = FileUtils.readFileToString(new File(encrypt.getEncryptedDir(), "p/E.java"), "UTF-8");
+            Assert.assertTrue(securedCode.contains("case \"a\" -> 1;"));
+            Assert.assertTrue(securedCode.contains("default -> " + InjectCodeTask.FUNCTION_NAME + "("));
+        } finally {
+            FileUtils.deleteDirectory(root);
+        }
+    }
+
+    /**
+     * Return the changes of a non-incremental execution of a task
+     * @param files Files of the task
+     * @return Input changes
+     */
+    private static InputChanges allFilesChanged(List<File> files) {
+        List<FileChange> changes = new ArrayList<>();
+        for (File file : files) {
+            changes.add((FileChange) Proxy.newProxyInstance(FileChange.class.getClassLoader(), new Class<?>[]{FileChange.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "getFile": return file;
+                            case "getChangeType": return ChangeType.ADDED;
+                            case "getFileType": return FileType.FILE;
+                            default: return null;
+                        }
+                    }));
+        }
+        return (InputChanges) Proxy.newProxyInstance(InputChanges.class.getClassLoader(), new Class<?>[]{InputChanges.class},
+                (proxy, method, args) -> method.getName().equals("isIncremental") ? (Object) false : changes);
+    }
+
+    @Test
+    public void testCipherCache() throws Exception {
+        String key = Utils.randomHashKey();
+        File file = File.createTempFile("enigma-cache", ".bin");
+        try {
+            CipherCache cache = new CipherCache(key, 2);
+            byte[] encrypted = cache.encrypt("Hello");
+            Assert.assertArrayEquals(AESUtils.toByte(AESUtils.encrypt(key, "Hello")), encrypted);
+            Assert.assertArrayEquals(encrypted, cache.encrypt("Hello"));
+            cache.encrypt("World");
+            cache.encrypt("Hello");
+            cache.encrypt("Enigma"); // "World" removed (least recently used)
+            Assert.assertEquals(2, cache.getHits());
+            Assert.assertEquals(3, cache.getMisses());
+            Assert.assertEquals(2, cache.size());
+            cache.save(file);
+
+            CipherCache loaded = CipherCache.load(file, key, 2);
+            Assert.assertArrayEquals(encrypted, loaded.encrypt("Hello"));
+            loaded.encrypt("Enigma");
+            loaded.encrypt("World");
+            Assert.assertEquals(2, loaded.getHits());
+            Assert.assertEquals(1, loaded.getMisses());
+
+            // Another key: cache invalidated
+            Assert.assertEquals(0, CipherCache.load(file, Utils.randomHashKey(), 2).size());
+        } finally {
+            Assert.assertTrue(file.delete());
+        }
+    }
+
+    @Test
+    public void testBackupManifest() throws Exception {
+        File dir = Files.createTempDirectory("enigma-backup").toFile();
+        try {
+            File javaFile = new File(dir, "Main.java");
+            byte[] contents = "class Main {}".getBytes("UTF-8");
+            FileUtils.writeByteArrayToFile(javaFile, contents);
+
+            BackupManifest manifest = new BackupManifest();
+            String hash = BackupManifest.hash(contents);
+            Assert.assertEquals(64, hash.length());
+            manifest.put("/src/main/java/My Main.java", new BackupManifest.Entry(hash, javaFile.length(), javaFile.lastModified()));
+            manifest.put("/src/main/java/Other.java", new BackupManifest.Entry(hash, 1, 2));
+            manifest.remove("/src/main/java/Other.java");
+
+            File manifestFile = new File(dir, BackupManifest.FILE_NAME);
+            manifest.save(manifestFile);
+            BackupManifest loaded = BackupManifest.load(manifestFile);
+
+            Assert.assertEquals(1, loaded.paths().size());
+            BackupManifest.Entry entry = loaded.get("/src/main/java/My Main.java");
+            Assert.assertEquals(hash, entry.hash);
+            Assert.assertTrue(entry.isSameAs(javaFile));
+
+            FileUtils.writeStringToFile(javaFile, "class Main { }", "UTF-8");
+            Assert.assertFalse(entry.isSameAs(javaFile));
+            Assert.assertTrue(BackupManifest.load(new File(dir, "none")).paths().isEmpty());
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    @Test
+    public void testFileIndex() throws Exception {
+        File dir = Files.createTempDirectory("enigma-src").toFile();
+        try {
+            File build = new File(dir, "build");
+            for (String path : new String[] {"b/B.java", "a/A.java", "a/c/C.java", "a/Res.xml",
+                    ".git/G.java", "enigma-backup/a/A.java", "build/Gen.java"}) {
+                FileUtils.writeStringToFile(new File(dir, path), "class X {}", "UTF-8");
+            }
+
+            FileIndex index = new FileIndex(Collections.singletonList(build));
+            List<File> javaFiles = index.getFiles(dir, ".java");
+            Assert.assertEquals(Arrays.asList(new File(dir, "a/A.java"), new File(dir, "a/c/C.java"), new File(dir, "b/B.java")), javaFiles);
+            Assert.assertSame(javaFiles, index.getFiles(dir, ".java"));
+            Assert.assertEquals(1, index.getFiles(dir, ".xml").size());
+            Assert.assertEquals(1, index.getFiles(build, ".java").size());
+
+            Assert.assertEquals(6, Utils.listFileTree(dir, ".java").size());
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    @Test
+    public void testClassNameMatcher() {
+        ClassNameMatcher matcher = new ClassNameMatcher(new String[] {
+                "com.app.MainActivity.java", "Constants", "com.app.helpers.*", "com.lib.**"});
+
+        Assert.assertTrue(matcher.matches("com.app.MainActivity"));
+        Assert.assertTrue(matcher.matches("com.app.Constants"));
+        Assert.assertTrue(matcher.matches("com.app.helpers.Utils"));
+        Assert.assertTrue(matcher.matches("com.lib.Lib"));
+        Assert.assertTrue(matcher.matches("com.lib.a.b.Lib"));
+
+        Assert.assertFalse(matcher.matches("com.app.MyMainActivity"));
+        Assert.assertFalse(matcher.matches("com.app.helpers.sub.Utils"));
+        Assert.assertFalse(matcher.matches("com.library.Lib"));
+        Assert.assertFalse(matcher.matches("Main"));
+
+        String path = "com" + File.separator + "app" + File.separator + "MainActivity.java";
+        Assert.assertEquals("com.app.MainActivity", ClassNameMatcher.toClassName(path));
+    }
+
     @Test
     public void testRandomNumber() {
         int value;
@@ -197,4 +655,25 @@ public class UnitTests {
         Assert.assertFalse(TextUtils.isEmptyChar('`'));
     }
 
+    @Test
+    public void testTextIndexOf() throws Exception {
+        byte[] code = ("package é.app;\n" + InjectCodeTask.IMPORT_NAME + "\nclass A {}").getBytes("UTF-8");
+        byte[] marker = InjectCodeTask.IMPORT_NAME.getBytes("UTF-8");
+
+        Assert.assertEquals(16, TextUtils.indexOf(code, marker));
+        Assert.assertEquals(-1, TextUtils.indexOf(code, InjectCodeTask.FUNCTION_NAME.getBytes("UTF-8")));
+        Assert.assertEquals(-1, TextUtils.indexOf(new byte[0], marker));
+        Assert.assertEquals(0, TextUtils.indexOf(code, "package".getBytes("UTF-8")));
+
+        for (int size = 0; size < 40; size++) {
+            byte[] bytes = new byte[size];
+            Arrays.fill(bytes, (byte) 0xA2);
+            Assert.assertEquals(-1, TextUtils.indexOf(bytes, (byte) '"'));
+            for (int i = size - 1; i >= 0; i--) {
+                bytes[i] = '"';
+                Assert.assertEquals(i, TextUtils.indexOf(bytes, (byte) '"'));
+            }
+        }
+    }
+
 }